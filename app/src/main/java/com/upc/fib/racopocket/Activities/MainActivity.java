@@ -1,11 +1,15 @@
 package com.upc.fib.racopocket.Activities;
 
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Handler;
+import android.util.Log;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 
 import com.upc.fib.racopocket.R;
+import com.upc.fib.racopocket.Utils.Constants;
+import com.upc.fib.racopocket.Utils.DurableFile;
 import com.upc.fib.racopocket.Utils.LocaleUtils;
 import com.upc.fib.racopocket.Utils.PreferencesUtils;
 
@@ -19,6 +23,8 @@ public class MainActivity extends AppCompatActivity {
         LocaleUtils localeUtils = new LocaleUtils(getApplicationContext());
         localeUtils.setLocale();
 
+        new DeleteStaleFiles().execute();
+
         final Intent intent = nextActivity();
         new Handler().postDelayed(new Runnable() {
             @Override
@@ -39,4 +45,17 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private class DeleteStaleFiles extends AsyncTask<Void, Void, Void> {
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            int deleted = DurableFile.deleteStaleTemporaryFiles(getApplicationContext().getFilesDir());
+            if (deleted > 0) {
+                Log.d(Constants.TAG_FILE, "Deleted " + deleted + " interrupted downloads");
+            }
+            return null;
+        }
+
+    }
+
 }
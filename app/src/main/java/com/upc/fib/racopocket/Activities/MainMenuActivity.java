@@ -1,6 +1,7 @@
 package com.upc.fib.racopocket.Activities;
 
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.support.v4.app.Fragment;
@@ -22,12 +23,13 @@ import com.upc.fib.racopocket.R;
 import com.upc.fib.racopocket.Fragments.ScheduleMainMenu;
 import com.upc.fib.racopocket.Fragments.SubjectInfoMainMenu;
 import com.upc.fib.racopocket.Fragments.TimetableMainMenu;
+import com.upc.fib.racopocket.Models.StudentModel;
+import com.upc.fib.racopocket.Utils.DataRepository;
+import com.upc.fib.racopocket.Utils.DataSnapshot;
 import com.upc.fib.racopocket.Utils.FileUtils;
+import com.upc.fib.racopocket.Utils.NotificationInbox;
 import com.upc.fib.racopocket.Utils.PreferencesUtils;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 public class MainMenuActivity extends AppCompatActivity implements NavigationView.OnNavigationItemSelectedListener {
 
     Fragment newFragment = null;
@@ -40,7 +42,7 @@ public class MainMenuActivity extends AppCompatActivity implements NavigationVie
 
         welcomeName = (TextView) findViewById(R.id.welcome_name);
 
-        setWelcomeText();
+        new LoadWelcomeText().execute();
 
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -98,8 +100,11 @@ public class MainMenuActivity extends AppCompatActivity implements NavigationVie
             fileUtils.deleteFile("info-personal.json");
             fileUtils.deleteFile("assignatures.json");
             fileUtils.deleteFile("horari-setmanal.json");
+            fileUtils.deleteFile(DataSnapshot.SNAPSHOT_FILE);
             fileUtils.deleteFile("avisos.json");
             fileUtils.deleteFile("calendari-portada.ics");
+            fileUtils.deleteFile("calendari-portada.ics.idx");
+            fileUtils.deleteFile(NotificationInbox.INBOX_FILE);
             fileUtils.deleteFile("places-lliures.json");
 
             Intent intent = new Intent(MainMenuActivity.this, MainActivity.class);
@@ -158,18 +163,25 @@ public class MainMenuActivity extends AppCompatActivity implements NavigationVie
         }
     }
 
-    private void setWelcomeText() {
-        FileUtils fileUtils = new FileUtils(getApplicationContext(), null);
-        String studentData = fileUtils.readFileToString("info-personal.json");
-
-        try {
-            JSONObject object = new JSONObject(studentData);
-            String data = getResources().getString(R.string.welcome).toUpperCase() + "\n " + object.getString("nom") + " " + object.getString("cognoms");
-            welcomeName.setText(data);
-            PreferencesUtils.storeStringPreference(getApplicationContext(), "LOGIN_SUCCESSFUL", "OK");
-        } catch (JSONException e) {
-            e.printStackTrace();
+    /**
+     * Loads the student information off the UI thread, as the repository may be busy parsing other files.
+     */
+    private class LoadWelcomeText extends AsyncTask<Void, Void, StudentModel> {
+
+        @Override
+        protected StudentModel doInBackground(Void... params) {
+            return DataRepository.getInstance(getApplicationContext()).getStudentInfo();
+        }
+
+        @Override
+        protected void onPostExecute(StudentModel studentInfo) {
+            if (studentInfo != null && !isFinishing()) {
+                String data = getResources().getString(R.string.welcome).toUpperCase() + "\n " + studentInfo.getName() + " " + studentInfo.getSurname();
+                welcomeName.setText(data);
+                PreferencesUtils.storeStringPreference(getApplicationContext(), "LOGIN_SUCCESSFUL", "OK");
+            }
         }
+
     }
 
 }
@@ -15,16 +15,17 @@ import android.support.v7.app.AlertDialog;
 import android.widget.Toast;
 
 import com.upc.fib.racopocket.R;
+import com.upc.fib.racopocket.Utils.CatalogueManifest;
 import com.upc.fib.racopocket.Utils.Constants;
+import com.upc.fib.racopocket.Utils.DataRepository;
 import com.upc.fib.racopocket.Utils.FileUtils;
 import com.upc.fib.racopocket.Utils.LocaleUtils;
 import com.upc.fib.racopocket.Utils.PreferencesUtils;
+import com.upc.fib.racopocket.Utils.SyncEngine;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 import oauth.signpost.OAuthConsumer;
 import oauth.signpost.basic.DefaultOAuthConsumer;
@@ -158,53 +159,43 @@ public class SettingsActivity extends PreferenceActivity {
                 consumer.setTokenWithSecret(token, secret);
                 FileUtils fileUtils = new FileUtils(getActivity().getApplicationContext(), consumer);
 
-                int currentProgress = 0;
-                if (200 != fileUtils.fetchAndStoreFile("https://raco.fib.upc.edu/api-v1/info-personal.json", "info-personal.json")) {
-                    return "ERROR";
-                }
-                publishProgress(++currentProgress);
-                if (200 != fileUtils.fetchAndStoreFile("https://raco.fib.upc.edu/api-v1/assignatures.json", "assignatures.json")) {
-                    return "ERROR";
-                }
-                publishProgress(++currentProgress);
-                if (200 != fileUtils.fetchAndStoreFile("https://raco.fib.upc.edu/api-v1/horari-setmanal.json", "horari-setmanal.json")) {
+                SyncEngine syncEngine = new SyncEngine(fileUtils, SyncEngine.DEFAULT_POOL_SIZE);
+                syncEngine.setOnProgressListener(new SyncEngine.OnProgressListener() {
+                    @Override
+                    public void onProgress(int completed, int total) {
+                        publishProgress(completed, total);
+                    }
+                });
+
+                syncEngine.enqueue("https://raco.fib.upc.edu/api-v1/info-personal.json", "info-personal.json", true);
+                syncEngine.enqueue("https://raco.fib.upc.edu/api-v1/assignatures.json", "assignatures.json", true);
+                syncEngine.enqueue("https://raco.fib.upc.edu/api-v1/horari-setmanal.json", "horari-setmanal.json", true);
+                syncEngine.enqueue("https://raco.fib.upc.edu/api/assignatures/llista.json", "llista.json", true);
+                syncEngine.enqueue("https://raco.fib.upc.edu/api-v1/avisos.json", "avisos.json", false);
+                syncEngine.enqueue("https://raco.fib.upc.edu/api-v1/calendari-portada.ics", "calendari-portada.ics", false);
+                syncEngine.enqueue("https://raco.fib.upc.edu/api/aules/places-lliures.json", "places-lliures.json", false);
+                if (!syncEngine.run()) {
                     return "ERROR";
                 }
-                publishProgress(++currentProgress);
-                if (200 != fileUtils.fetchAndStoreFile("https://raco.fib.upc.edu/api/assignatures/llista.json", "llista.json")) {
+
+                long now = System.currentTimeMillis();
+                CatalogueManifest catalogueManifest = new CatalogueManifest(fileUtils);
+                List<SyncEngine.Request> subjectRequests = catalogueManifest.enqueueStaleSubjects(syncEngine, now);
+                boolean subjectsSynced = syncEngine.run();
+                Set<String> changedSubjects = catalogueManifest.commit(subjectRequests, now);
+                DataRepository.getInstance(getActivity().getApplicationContext()).getSubjectTextIndex().update(changedSubjects);
+                if (!subjectsSynced) {
                     return "ERROR";
                 }
-                publishProgress(++currentProgress);
-                fileUtils.fetchAndStoreFile("https://raco.fib.upc.edu/api-v1/avisos.json", "avisos.json");
-                publishProgress(++currentProgress);
-                fileUtils.fetchAndStoreFile("https://raco.fib.upc.edu/api-v1/calendari-portada.ics", "calendari-portada.ics");
-                publishProgress(++currentProgress);
-                fileUtils.fetchAndStoreFile("https://raco.fib.upc.edu/api/aules/places-lliures.json", "places-lliures.json");
-                publishProgress(++currentProgress);
-
-                String subjects = fileUtils.readFileToString("llista.json");
-                try {
-                    JSONArray subjectsJSONArray = new JSONArray(subjects);
-                    for (int i = 0; i < subjectsJSONArray.length(); i++) {
-                        JSONObject subjectJSONObject = subjectsJSONArray.getJSONObject(i);
-                        String subjectCode = subjectJSONObject.getString("codi_upc");
-                        String filename = "subject_" + subjectCode + ".json";
-                        if (200 != fileUtils.fetchAndStoreFile("https://raco.fib.upc.edu/api/assignatures/info.json?codi_upc=" + subjectCode, filename)) {
-                            fileUtils.deleteFile(filename);
-                            return "ERROR";
-                        }
-                        publishProgress(++currentProgress);
-                    }
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
 
-                publishProgress(100);
+                DataRepository.getInstance(getActivity().getApplicationContext()).saveSnapshot();
+
                 return "OK";
             }
 
             @Override
             public void onProgressUpdate(Integer... args) {
+                progressDialog.setMax(args[1]);
                 progressDialog.setProgress(args[0]);
             }
 
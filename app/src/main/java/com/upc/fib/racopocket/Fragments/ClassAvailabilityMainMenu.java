@@ -1,43 +1,72 @@
 package com.upc.fib.racopocket.Fragments;
 
+import android.content.Context;
 import android.content.DialogInterface;
+import android.graphics.Color;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.Fragment;
 import android.support.v4.content.ContextCompat;
+import android.support.v4.util.Pair;
 import android.support.v7.app.AlertDialog;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.format.DateUtils;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import com.upc.fib.racopocket.Activities.MainMenuActivity;
 import com.upc.fib.racopocket.Models.ClassroomModel;
 import com.upc.fib.racopocket.R;
+import com.upc.fib.racopocket.Utils.Constants;
+import com.upc.fib.racopocket.Utils.DataRepository;
+import com.upc.fib.racopocket.Utils.DividerDecoration;
 import com.upc.fib.racopocket.Utils.FileUtils;
+import com.upc.fib.racopocket.Utils.OccupancyHistory;
+import com.upc.fib.racopocket.Utils.PreferencesUtils;
+import com.upc.fib.racopocket.Utils.RecyclerListAdapter;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 
 public class ClassAvailabilityMainMenu extends Fragment {
 
-    TextView connectionProblemText;
+    private static final String CLASSROOMS_FILE = "places-lliures.json";
+    private static final String CHECKED_AT_PREFERENCE = "CLASSROOMS_CHECKED_AT";
+    private static final String LIVE_INTERVAL_PREFERENCE = "liveClassroomsInterval";
+    private static final int DEFAULT_LIVE_INTERVAL = 60;
+
+    TextView connectionProblemText, age;
     ImageButton update;
-    ListView listView;
+    RecyclerView listView;
     ProgressBar progressBar;
     LinearLayout classAvailabilityInfo;
 
+    boolean workInProgress, resumed;
+
+    Handler handler = new Handler();
+    Runnable liveRefresh = new Runnable() {
+        @Override
+        public void run() {
+            if (!workInProgress) {
+                new GetClassroomsInfo(false).execute();
+            }
+        }
+    };
+
+    ClassroomsAdapter classroomsAdapter;
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         ((MainMenuActivity) getActivity()).setActionBarDesign(getResources().getString(R.string.nav_class_availability));
@@ -46,8 +75,9 @@ public class ClassAvailabilityMainMenu extends Fragment {
         update = (ImageButton) rootView.findViewById(R.id.updateNotifications);
         connectionProblemText = (TextView) rootView.findViewById(R.id.connectionProblemTextClassAvailability);
         progressBar = (ProgressBar) rootView.findViewById(R.id.progressBar);
-        listView = (ListView) rootView.findViewById(R.id.listView);
+        listView = (RecyclerView) rootView.findViewById(R.id.listView);
         classAvailabilityInfo = (LinearLayout) rootView.findViewById(R.id.class_info_linear_layout);
+        age = (TextView) rootView.findViewById(R.id.classAvailabilityAge);
 
         return rootView;
     }
@@ -58,17 +88,21 @@ public class ClassAvailabilityMainMenu extends Fragment {
         update.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                listView.setVisibility(View.GONE);
-                connectionProblemText.setVisibility(View.GONE);
-                new GetClassroomsInfo().execute();
+                if (!workInProgress) {
+                    new GetClassroomsInfo(true).execute();
+                }
             }
         });
 
-        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        classroomsAdapter = new ClassroomsAdapter();
+        listView.setLayoutManager(new LinearLayoutManager(getContext()));
+        listView.addItemDecoration(new DividerDecoration(getContext(), Color.parseColor("#0E537B")));
+        listView.setAdapter(classroomsAdapter);
+
+        classroomsAdapter.setOnItemClickListener(new RecyclerListAdapter.OnItemClickListener<ClassroomModel>() {
             @Override
-            public void onItemClick(AdapterView<?> adapter, View view, int position, long id) {
+            public void onItemClick(ClassroomModel classroomModel) {
                 WebView webView = new WebView(getContext());
-                ClassroomModel classroomModel = (ClassroomModel) listView.getItemAtPosition(position);
                 String building = classroomModel.getName().substring(0, 2);
                 webView.loadUrl("https://raco.fib.upc.edu/mapa_ocupades.php?mod=" + building);
                 webView.setWebViewClient(new WebViewClient() {
@@ -93,80 +127,234 @@ public class ClassAvailabilityMainMenu extends Fragment {
             }
         });
 
-        new GetClassroomsInfo().execute();
+        new GetClassroomsInfo(true).execute();
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        resumed = true;
+        if (!workInProgress) {
+            scheduleLiveRefresh();
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        resumed = false;
+        handler.removeCallbacks(liveRefresh);
+    }
+
+    /**
+     * Schedules the next live refresh, if enabled in the settings. It is only scheduled once the
+     * previous refresh has finished, so slow responses never pile up requests.
+     */
+    private void scheduleLiveRefresh() {
+        handler.removeCallbacks(liveRefresh);
+        int interval = DEFAULT_LIVE_INTERVAL;
+        String storedInterval = PreferencesUtils.recoverStringPreference(getContext().getApplicationContext(), LIVE_INTERVAL_PREFERENCE);
+        if (!storedInterval.isEmpty()) {
+            try {
+                interval = Integer.parseInt(storedInterval);
+            } catch (NumberFormatException e) {
+                Log.e(Constants.TAG_FILE, "Refresh interval parse failed: " + e.toString());
+            }
+        }
+        if (interval > 0) {
+            handler.postDelayed(liveRefresh, interval * DateUtils.SECOND_IN_MILLIS);
+        }
+    }
+
+    /**
+     * Shows the classrooms, only rebinding the rows whose free places changed, along with the time
+     * their data was last confirmed by the server.
+     * @param classrooms Classrooms to be shown.
+     * @param checkedAt Time in milliseconds of the last successful fetch, 0 if unknown.
+     */
+    private void showClassrooms(List<ClassroomModel> classrooms, long checkedAt) {
+        connectionProblemText.setVisibility(View.GONE);
+        classAvailabilityInfo.setVisibility(View.VISIBLE);
+        update.setVisibility(View.VISIBLE);
+
+        classroomsAdapter.setItems(classrooms);
+
+        listView.setVisibility(View.VISIBLE);
+        progressBar.setVisibility(View.GONE);
+
+        if (checkedAt > 0) {
+            CharSequence elapsed = DateUtils.getRelativeTimeSpanString(checkedAt, System.currentTimeMillis(), DateUtils.MINUTE_IN_MILLIS);
+            age.setText(getResources().getString(R.string.class_availability_age, elapsed));
+            age.setVisibility(View.VISIBLE);
+        } else {
+            age.setVisibility(View.GONE);
+        }
     }
 
-    private class GetClassroomsInfo extends AsyncTask<Void, Void, String> {
+    /**
+     * Shows the stored snapshot right away, if it is not shown yet, and revalidates it meanwhile.
+     * Unchanged data costs a 304 and no parsing, as the repository keeps the parsed classrooms until
+     * the file is replaced.
+     */
+    private class GetClassroomsInfo extends AsyncTask<Void, List<ClassroomModel>, Pair<Integer, List<ClassroomModel>>> {
+
+        boolean reportErrors;
+        Context context;
+        boolean showStored;
+        volatile long checkedAt;
+
+        /**
+         * GetClassroomsInfo constructor.
+         * @param reportErrors Whether a failed fetch is notified, live refreshes fail silently.
+         */
+        GetClassroomsInfo(boolean reportErrors) {
+            this.reportErrors = reportErrors;
+        }
 
         @Override
         protected void onPreExecute() {
-            progressBar.setVisibility(View.VISIBLE);
-            listView.setVisibility(View.GONE);
-            classAvailabilityInfo.setVisibility(View.GONE);
+            workInProgress = true;
+            context = getContext().getApplicationContext();
+            showStored = classroomsAdapter.getItemCount() == 0;
+            if (showStored) {
+                progressBar.setVisibility(View.VISIBLE);
+                listView.setVisibility(View.GONE);
+                classAvailabilityInfo.setVisibility(View.GONE);
+            }
         }
 
         @Override
-        protected String doInBackground(Void... params) {
-            FileUtils fileUtils = new FileUtils(getContext().getApplicationContext(), null);
-            fileUtils.deleteFile("places-lliures.json");
-            fileUtils.fetchAndStoreFile("https://raco.fib.upc.edu/api/aules/places-lliures.json" , "places-lliures.json");
-            return fileUtils.readFileToString("places-lliures.json");
+        @SuppressWarnings("unchecked")
+        protected Pair<Integer, List<ClassroomModel>> doInBackground(Void... params) {
+            DataRepository dataRepository = DataRepository.getInstance(context);
+            OccupancyHistory occupancyHistory = dataRepository.getOccupancyHistory();
+            checkedAt = getCheckedAt();
+            if (showStored) {
+                List<ClassroomModel> storedClassrooms = dataRepository.getClassrooms();
+                if (storedClassrooms != null) {
+                    publishProgress(addUsualAvailability(storedClassrooms, occupancyHistory, System.currentTimeMillis()));
+                }
+            }
+
+            FileUtils fileUtils = new FileUtils(context, null);
+            // The stored file is only replaced once the new one is complete, and kept if the fetch fails
+            int statusCode = fileUtils.fetchAndStoreFile("https://raco.fib.upc.edu/api/aules/places-lliures.json", CLASSROOMS_FILE);
+            long now = System.currentTimeMillis();
+            List<ClassroomModel> classrooms = dataRepository.getClassrooms();
+            if (FileUtils.isSuccessful(statusCode)) {
+                PreferencesUtils.storeLongPreference(context, CHECKED_AT_PREFERENCE, now);
+                checkedAt = getCheckedAt();
+                if (classrooms != null) {
+                    occupancyHistory.record(classrooms, now);
+                }
+            }
+            if (classrooms != null) {
+                classrooms = addUsualAvailability(classrooms, occupancyHistory, now);
+            }
+            return new Pair<>(statusCode, classrooms);
+        }
+
+        private List<ClassroomModel> addUsualAvailability(List<ClassroomModel> classrooms, OccupancyHistory occupancyHistory, long time) {
+            List<ClassroomModel> annotatedClassrooms = new ArrayList<>(classrooms.size());
+            for (ClassroomModel classroom : classrooms) {
+                int usualAvailability = occupancyHistory.getUsualAvailability(classroom.getName(), time);
+                annotatedClassrooms.add(new ClassroomModel(classroom.getName(), classroom.getAvailability(), usualAvailability));
+            }
+            return annotatedClassrooms;
+        }
+
+        /**
+         * Gets when the stored file was last confirmed, which is its modification time unless it has
+         * been revalidated afterwards.
+         */
+        private long getCheckedAt() {
+            long modified = new File(context.getFilesDir(), CLASSROOMS_FILE).lastModified();
+            return Math.max(modified, PreferencesUtils.recoverLongPreference(context, CHECKED_AT_PREFERENCE));
         }
 
         @Override
-        protected void onPostExecute(String response) {
-            if (response == null) {
-                connectionProblemText.setVisibility(View.VISIBLE);
-            } else {
-                final ArrayList<ClassroomModel> classroomsInfo = new ArrayList<>();
-                try {
-                    JSONObject jsonObject = new JSONObject(response);
-
-                    classAvailabilityInfo.setVisibility(View.VISIBLE);
-                    update.setVisibility(View.VISIBLE);
-
-                    JSONArray classroomsJSONArray = jsonObject.getJSONArray("aules");
-                    for (int i = 0; i < classroomsJSONArray.length(); i++) {
-                        String name = classroomsJSONArray.getJSONObject(i).getString("nom");
-                        int availability = classroomsJSONArray.getJSONObject(i).getInt("places");
-                        classroomsInfo.add(new ClassroomModel(name, availability));
-                    }
-                } catch (JSONException e) {
-                    e.printStackTrace();
+        protected void onProgressUpdate(List<ClassroomModel>... values) {
+            if (isAdded()) {
+                showClassrooms(values[0], checkedAt);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Pair<Integer, List<ClassroomModel>> response) {
+            workInProgress = false;
+            // A live refresh may finish after the user has left the screen
+            if (!isAdded()) {
+                return;
+            }
+            if (response.second != null) {
+                showClassrooms(response.second, checkedAt);
+                if (reportErrors && !FileUtils.isSuccessful(response.first)) {
+                    Toast.makeText(context, getResources().getString(R.string.connection_problems), Toast.LENGTH_LONG).show();
                 }
+            } else {
+                connectionProblemText.setVisibility(View.VISIBLE);
+            }
+            progressBar.setVisibility(View.GONE);
+            if (resumed) {
+                scheduleLiveRefresh();
+            }
+        }
+    }
 
-                final ArrayAdapter<ClassroomModel> adapter = new ArrayAdapter<ClassroomModel>(getContext(), R.layout.class_availability_item_list, R.id.classroomNameClassAvailability, classroomsInfo) {
-                    @Override
-                    public View getView(int position, View convertView, ViewGroup parent) {
-                        View view = super.getView(position, convertView, parent);
-                        TextView text1 = (TextView) view.findViewById(R.id.classroomNameClassAvailability);
-                        TextView text2 = (TextView) view.findViewById(R.id.availabilityClassAvailability);
-
-                        String name = classroomsInfo.get(position).getName().toUpperCase();
-                        int availability = classroomsInfo.get(position).getAvailability();
-
-                        text1.setText(name);
-                        text2.setText(String.valueOf(availability));
-
-                        int statusColor;
-                        if (availability == 0) {
-                            statusColor = ContextCompat.getColor(getContext(), R.color.not_available);
-                        } else if (availability < 5) {
-                            statusColor = ContextCompat.getColor(getContext(), R.color.quite_not_available);
-                        } else {
-                            statusColor = ContextCompat.getColor(getContext(), R.color.available);
-                        }
-                        view.setBackgroundColor(statusColor);
-                        return view;
-                    }
-                };
+    private class ClassroomsAdapter extends RecyclerListAdapter<ClassroomModel, ClassroomViewHolder> {
 
-                listView.setAdapter(adapter);
+        @Override
+        protected String getItemKey(ClassroomModel item) {
+            return item.getName();
+        }
+
+        @Override
+        protected boolean areContentsTheSame(ClassroomModel oldItem, ClassroomModel newItem) {
+            return oldItem.getAvailability() == newItem.getAvailability() && oldItem.getUsualAvailability() == newItem.getUsualAvailability();
+        }
+
+        @Override
+        protected ClassroomViewHolder onCreateItemViewHolder(ViewGroup parent, int viewType) {
+            return new ClassroomViewHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.class_availability_item_list, parent, false));
+        }
 
-                listView.setVisibility(View.VISIBLE);
+        @Override
+        public void onBindViewHolder(ClassroomViewHolder holder, int position) {
+            ClassroomModel classroom = getItem(position);
+            int availability = classroom.getAvailability();
+            holder.name.setText(classroom.getName().toUpperCase());
+            holder.availability.setText(String.valueOf(availability));
+            if (classroom.getUsualAvailability() >= 0) {
+                holder.usualAvailability.setText(getResources().getString(R.string.class_availability_usual, classroom.getUsualAvailability()));
+                holder.usualAvailability.setVisibility(View.VISIBLE);
+            } else {
+                holder.usualAvailability.setVisibility(View.GONE);
             }
-            progressBar.setVisibility(View.GONE);
+
+            int statusColor;
+            if (availability == 0) {
+                statusColor = ContextCompat.getColor(getContext(), R.color.not_available);
+            } else if (availability < 5) {
+                statusColor = ContextCompat.getColor(getContext(), R.color.quite_not_available);
+            } else {
+                statusColor = ContextCompat.getColor(getContext(), R.color.available);
+            }
+            holder.itemView.setBackgroundColor(statusColor);
+        }
+
+    }
+
+    static class ClassroomViewHolder extends RecyclerView.ViewHolder {
+
+        TextView name, availability, usualAvailability;
+
+        ClassroomViewHolder(View itemView) {
+            super(itemView);
+            name = (TextView) itemView.findViewById(R.id.classroomNameClassAvailability);
+            availability = (TextView) itemView.findViewById(R.id.availabilityClassAvailability);
+            usualAvailability = (TextView) itemView.findViewById(R.id.usualAvailabilityClassAvailability);
         }
+
     }
 
 }
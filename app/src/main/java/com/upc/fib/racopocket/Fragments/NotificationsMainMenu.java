@@ -1,18 +1,17 @@
 package com.upc.fib.racopocket.Fragments;
 
-import android.content.Context;
 import android.content.Intent;
+import android.graphics.Color;
 import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
-import android.support.v4.util.Pair;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseExpandableListAdapter;
-import android.widget.ExpandableListView;
 import android.widget.ImageButton;
 import android.widget.ProgressBar;
 import android.widget.TextView;
@@ -20,36 +19,44 @@ import android.widget.Toast;
 
 import com.upc.fib.racopocket.Activities.MainMenuActivity;
 import com.upc.fib.racopocket.Models.NotificationModel;
+import com.upc.fib.racopocket.Models.SubjectModel;
 import com.upc.fib.racopocket.R;
 import com.upc.fib.racopocket.Utils.Constants;
+import com.upc.fib.racopocket.Utils.DataRepository;
+import com.upc.fib.racopocket.Utils.DividerDecoration;
 import com.upc.fib.racopocket.Utils.FileUtils;
+import com.upc.fib.racopocket.Utils.NotificationInbox;
 import com.upc.fib.racopocket.Utils.PreferencesUtils;
+import com.upc.fib.racopocket.Utils.RecyclerListAdapter;
+import com.upc.fib.racopocket.Utils.SyncEngine;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import oauth.signpost.OAuthConsumer;
 import oauth.signpost.basic.DefaultOAuthConsumer;
 
 public class NotificationsMainMenu extends Fragment {
 
+    private static final int FEEDS_POOL_SIZE = 3;
+    private static final int FEED_TIMEOUT = 10000;
+    // Newest notifications kept per subject, the rest of each feed is not even parsed
+    private static final int MAX_FEED_ITEMS = 50;
+    private static final int TYPE_GROUP = 0;
+    private static final int TYPE_NOTIFICATION = 1;
+
     ImageButton update;
-    ExpandableListView expListViewNotifications;
+    RecyclerView expListViewNotifications;
     ProgressBar progressBar;
 
-    String mySubjects;
-    List<String> listDataHeader;
-
-    ExpandableListAdapter expandableListAdapter;
+    NotificationsAdapter notificationsAdapter;
+    LinkedHashMap<String, List<NotificationModel>> groups = new LinkedHashMap<>();
+    Set<String> expandedGroups = new HashSet<>();
 
     OAuthConsumer consumer = new DefaultOAuthConsumer(Constants.CONSUMER_KEY, Constants.CONSUMER_SECRET);
 
@@ -60,7 +67,7 @@ public class NotificationsMainMenu extends Fragment {
 
         update = (ImageButton) rootView.findViewById(R.id.updateNotifications);
         progressBar = (ProgressBar) rootView.findViewById(R.id.progressBarNotifications);
-        expListViewNotifications = (ExpandableListView) rootView.findViewById(R.id.expListViewNotifications);
+        expListViewNotifications = (RecyclerView) rootView.findViewById(R.id.expListViewNotifications);
 
         String token = PreferencesUtils.recoverStringPreference(getContext().getApplicationContext(), "OAUTH_TOKEN");
         String secret = PreferencesUtils.recoverStringPreference(getContext().getApplicationContext(), "OAUTH_TOKEN_SECRET");
@@ -72,14 +79,25 @@ public class NotificationsMainMenu extends Fragment {
     public void onViewCreated(View view, Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        expListViewNotifications.setOnChildClickListener(new ExpandableListView.OnChildClickListener() {
+        notificationsAdapter = new NotificationsAdapter();
+        expListViewNotifications.setLayoutManager(new LinearLayoutManager(getContext()));
+        expListViewNotifications.addItemDecoration(new DividerDecoration(getContext(), Color.LTGRAY));
+        expListViewNotifications.setAdapter(notificationsAdapter);
+
+        notificationsAdapter.setOnItemClickListener(new RecyclerListAdapter.OnItemClickListener<NotificationRow>() {
             @Override
-            public boolean onChildClick(ExpandableListView parent, View v, int groupPosition, int childPosition, long id) {
-                NotificationModel notification = (NotificationModel) expandableListAdapter.getChild(groupPosition, childPosition);
-                Intent intent = new Intent(Intent.ACTION_VIEW);
-                intent.setData(Uri.parse(notification.getLink()));
-                startActivity(intent);
-                return true;
+            public void onItemClick(NotificationRow row) {
+                if (row.notification == null) {
+                    // Group headers expand or collapse, only their rows are inserted or removed
+                    if (!expandedGroups.remove(row.group)) {
+                        expandedGroups.add(row.group);
+                    }
+                    printNotifications();
+                } else {
+                    Intent intent = new Intent(Intent.ACTION_VIEW);
+                    intent.setData(Uri.parse(row.notification.getLink()));
+                    startActivity(intent);
+                }
             }
         });
 
@@ -93,9 +111,10 @@ public class NotificationsMainMenu extends Fragment {
         new GetNotifications().execute(false);
     }
 
-    private class GetNotifications extends AsyncTask<Boolean, Void, List<Pair<Integer, String>>> {
+    private class GetNotifications extends AsyncTask<Boolean, Void, LinkedHashMap<String, List<NotificationModel>>> {
 
         FileUtils fileUtils = new FileUtils(getContext().getApplicationContext(), consumer);
+        boolean connectionProblems = false;
 
         @Override
         protected void onPreExecute() {
@@ -104,163 +123,171 @@ public class NotificationsMainMenu extends Fragment {
         }
 
         @Override
-        protected List<Pair<Integer, String>> doInBackground(Boolean... params) {
+        protected LinkedHashMap<String, List<NotificationModel>> doInBackground(Boolean... params) {
             Boolean forceUpdate = params[0];
 
-            List<Pair<Integer, String>> subjectsRss = new ArrayList<>();
-            String mySubjects = fileUtils.readFileToString("assignatures.json");
-            try {
-                JSONArray mySubjectsJSONArray = new JSONArray(mySubjects);
-                for (int i = 0; i < mySubjectsJSONArray.length(); i++) {
-                    JSONObject mySubjectJSONObject = mySubjectsJSONArray.getJSONObject(i);
-                    String subjectID = mySubjectJSONObject.getString("codi_upc");
-                    int statusCode = 200;
-                    if (forceUpdate || !fileUtils.checkFileExists("notifications_" + subjectID + ".rss")
-                            || (PreferencesUtils.preferenceExists(getContext().getApplicationContext(), "enableAutomaticUpdates")
-                            && PreferencesUtils.recoverBooleanPreference(getContext().getApplicationContext(), "enableAutomaticUpdates"))) {
-                        statusCode = fileUtils.fetchAndStoreFile("https://raco.fib.upc.edu/api-v1/avisos-assignatura.rss?espai=" + subjectID, "notifications_" + subjectID + ".rss");
-                    }
-                    String subjectData = fileUtils.readFileToString("notifications_" + subjectID + ".rss");
-                    subjectsRss.add(new Pair<>(statusCode, subjectData));
+            boolean automaticUpdates = PreferencesUtils.preferenceExists(getContext().getApplicationContext(), "enableAutomaticUpdates")
+                    && PreferencesUtils.recoverBooleanPreference(getContext().getApplicationContext(), "enableAutomaticUpdates");
+            List<SubjectModel> subjects = DataRepository.getInstance(getContext()).getSubjects();
+
+            // Fetch the outdated feeds concurrently, a slow feed only times out its own subject
+            SyncEngine syncEngine = new SyncEngine(fileUtils, FEEDS_POOL_SIZE);
+            syncEngine.setTimeout(FEED_TIMEOUT);
+            HashMap<String, SyncEngine.Request> requests = new HashMap<>();
+            for (SubjectModel subject : subjects) {
+                String fileName = getFeedFile(subject);
+                if (forceUpdate || automaticUpdates || !fileUtils.checkFileExists(fileName)) {
+                    requests.put(subject.getId(), syncEngine.enqueue("https://raco.fib.upc.edu/api-v1/avisos-assignatura.rss?espai=" + subject.getUpcCode(), fileName, false));
                 }
-            } catch (JSONException e) {
-                e.printStackTrace();
             }
-
-            return subjectsRss;
-        }
-
-        @Override
-        protected void onPostExecute(List<Pair<Integer, String>> response) {
-            for (Pair<Integer, String> subjectNotifications: response) {
-                if (subjectNotifications.first != 200) {
-                    Toast.makeText(getContext().getApplicationContext(), getResources().getString(R.string.connection_problems), Toast.LENGTH_LONG).show();
-                    break;
+            syncEngine.run();
+            for (SyncEngine.Request request : requests.values()) {
+                if (!FileUtils.isSuccessful(request.getStatusCode())) {
+                    connectionProblems = true;
                 }
             }
 
-            mySubjects = fileUtils.readFileToString("assignatures.json");
-            listDataHeader = new ArrayList<>();
-            try {
-                JSONArray mySubjectsJSONArray = new JSONArray(mySubjects);
-                for (int i = 0; i < mySubjectsJSONArray.length(); i++) {
-                    JSONObject subjectJSONObject = mySubjectsJSONArray.getJSONObject(i);
-                    listDataHeader.add(subjectJSONObject.getString("idAssig"));
+            // Only the feed files replaced since their last merge are parsed, whoever fetched them
+            long now = System.currentTimeMillis();
+            NotificationInbox notificationInbox = DataRepository.getInstance(getContext()).getNotificationInbox();
+            List<String> subjectIds = new ArrayList<>();
+            for (SubjectModel subject : subjects) {
+                subjectIds.add(subject.getId());
+                String fileName = getFeedFile(subject);
+                // Taken before parsing, a file replaced meanwhile is parsed again on the next refresh
+                String stamp = fileUtils.getFileStamp(fileName);
+                if (stamp != null && !stamp.equals(notificationInbox.getSubjectStamp(subject.getId()))) {
+                    List<NotificationModel> notifications = fileUtils.readFileToRSS(fileName, MAX_FEED_ITEMS);
+                    if (notifications != null) {
+                        notificationInbox.merge(subject.getId(), stamp, notifications, now);
+                    }
                 }
-            } catch (JSONException e) {
-                e.printStackTrace();
             }
+            notificationInbox.retainSubjects(subjectIds);
 
-            HashMap<String, List<NotificationModel>> listDataChild = new HashMap<>();
-            for (int i = 0; i < response.size(); i++) {
-                List<NotificationModel> dataChild = fileUtils.readFileToRSS(response.get(i).second);
-                listDataChild.put(listDataHeader.get(i), dataChild);
+            LinkedHashMap<String, List<NotificationModel>> subjectsNotifications = new LinkedHashMap<>();
+            List<NotificationModel> unreadNotifications = notificationInbox.getUnread();
+            if (!unreadNotifications.isEmpty()) {
+                subjectsNotifications.put(getResources().getString(R.string.notifications_unread), unreadNotifications);
             }
+            subjectsNotifications.put(getResources().getString(R.string.notifications_all), notificationInbox.getAll());
+            for (SubjectModel subject : subjects) {
+                subjectsNotifications.put(subject.getId(), notificationInbox.getSubjectNotifications(subject.getId()));
+            }
+            notificationInbox.markOpened(now);
+            notificationInbox.save();
 
-            // Set and display the Subjects Array
-            expandableListAdapter = new ExpandableListAdapter(getContext(), listDataHeader, listDataChild);
-            expListViewNotifications.setAdapter(expandableListAdapter);
-
-            expListViewNotifications.setVisibility(View.VISIBLE);
-            progressBar.setVisibility(View.GONE);
+            return subjectsNotifications;
         }
 
-    }
+        private String getFeedFile(SubjectModel subject) {
+            return "notifications_" + subject.getUpcCode() + ".rss";
+        }
 
-    private class ExpandableListAdapter extends BaseExpandableListAdapter {
+        @Override
+        protected void onPostExecute(LinkedHashMap<String, List<NotificationModel>> response) {
+            if (connectionProblems) {
+                Toast.makeText(getContext().getApplicationContext(), getResources().getString(R.string.connection_problems), Toast.LENGTH_LONG).show();
+            }
 
-        private Context context;
-        private List<String> listDataHeader;
-        private HashMap<String, List<NotificationModel>> listDataChild;
+            groups = response;
+            printNotifications();
 
-        public ExpandableListAdapter(Context context, List<String> listDataHeader, HashMap<String, List<NotificationModel>> listChildData) {
-            this.context = context;
-            this.listDataHeader = listDataHeader;
-            this.listDataChild = listChildData;
+            expListViewNotifications.setVisibility(View.VISIBLE);
+            progressBar.setVisibility(View.GONE);
         }
 
-        @Override
-        public Object getChild(int groupPosition, int childPosition) {
-            return this.listDataChild.get(this.listDataHeader.get(groupPosition)).get(childPosition);
-        }
+    }
 
-        @Override
-        public long getChildId(int groupPosition, int childPosition) {
-            return childPosition;
+    void printNotifications() {
+        List<NotificationRow> rows = new ArrayList<>();
+        for (Map.Entry<String, List<NotificationModel>> group : groups.entrySet()) {
+            rows.add(new NotificationRow(group.getKey(), null));
+            if (expandedGroups.contains(group.getKey())) {
+                for (NotificationModel notification : group.getValue()) {
+                    rows.add(new NotificationRow(group.getKey(), notification));
+                }
+            }
         }
+        notificationsAdapter.setItems(rows);
+    }
 
-        @Override
-        public View getChildView(int groupPosition, final int childPosition, boolean isLastChild, View convertView, ViewGroup parent) {
-            if (convertView == null) {
-                LayoutInflater layoutInflater = (LayoutInflater) this.context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-                convertView = layoutInflater.inflate(R.layout.notifications_item_list, parent, false);
-            }
+    static class NotificationRow {
 
-            TextView titleNotifications = (TextView) convertView.findViewById(R.id.titleNotifications);
-            TextView dateNotifications = (TextView) convertView.findViewById(R.id.dateNotifications);
-
-            NotificationModel element = (NotificationModel) getChild(groupPosition, childPosition);
-            titleNotifications.setText(element.getTitle());
-
-            final String oldFormat = "EEE, dd MMM yyyy HH:mm:ss Z";
-            final String newFormat = "dd/MM/yyyy HH':'mm':'ss";
-            SimpleDateFormat simpleDateFormat = new SimpleDateFormat(oldFormat, Locale.ENGLISH);
-            try {
-                Date date = simpleDateFormat.parse(element.getPubDate());
-                simpleDateFormat.applyPattern(newFormat);
-                String dateNewFormat = simpleDateFormat.format(date);
-                dateNotifications.setText(dateNewFormat);
-            } catch (ParseException e) {
-                e.printStackTrace();
-            }
+        String group;
+        NotificationModel notification;
 
-            return convertView;
+        NotificationRow(String group, NotificationModel notification) {
+            this.group = group;
+            this.notification = notification;
         }
 
+    }
+
+    private class NotificationsAdapter extends RecyclerListAdapter<NotificationRow, RecyclerView.ViewHolder> {
+
         @Override
-        public int getChildrenCount(int groupPosition) {
-            return this.listDataChild.get(this.listDataHeader.get(groupPosition)).size();
+        protected String getItemKey(NotificationRow item) {
+            return item.notification == null ? item.group : item.group + "\n" + item.notification.getLink();
         }
 
         @Override
-        public Object getGroup(int groupPosition) {
-            return this.listDataHeader.get(groupPosition);
+        protected boolean areContentsTheSame(NotificationRow oldItem, NotificationRow newItem) {
+            return oldItem.notification == null
+                    || (oldItem.notification.getTitle().equals(newItem.notification.getTitle())
+                    && oldItem.notification.getDisplayDate().equals(newItem.notification.getDisplayDate()));
         }
 
         @Override
-        public int getGroupCount() {
-            return this.listDataHeader.size();
+        public int getItemViewType(int position) {
+            return getItem(position).notification == null ? TYPE_GROUP : TYPE_NOTIFICATION;
         }
 
         @Override
-        public long getGroupId(int groupPosition) {
-            return groupPosition;
+        protected RecyclerView.ViewHolder onCreateItemViewHolder(ViewGroup parent, int viewType) {
+            LayoutInflater layoutInflater = LayoutInflater.from(parent.getContext());
+            if (viewType == TYPE_GROUP) {
+                return new GroupViewHolder(layoutInflater.inflate(R.layout.notifications_group_list, parent, false));
+            }
+            return new NotificationViewHolder(layoutInflater.inflate(R.layout.notifications_item_list, parent, false));
         }
 
         @Override
-        public View getGroupView(int groupPosition, boolean isExpanded, View convertView, ViewGroup parent) {
-            String headerTitle = (String) getGroup(groupPosition);
-            if (convertView == null) {
-                LayoutInflater inflater = (LayoutInflater) this.context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-                convertView = inflater.inflate(R.layout.notifications_group_list, parent, false);
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            NotificationRow row = getItem(position);
+            if (holder instanceof GroupViewHolder) {
+                ((GroupViewHolder) holder).header.setText(row.group);
+            } else {
+                NotificationViewHolder notificationViewHolder = (NotificationViewHolder) holder;
+                notificationViewHolder.title.setText(row.notification.getTitle());
+                notificationViewHolder.date.setText(row.notification.getDisplayDate());
             }
+        }
 
-            TextView lblListHeader = (TextView) convertView.findViewById(R.id.notificationListHeader);
-            lblListHeader.setTypeface(null, Typeface.BOLD);
-            lblListHeader.setText(headerTitle);
+    }
 
-            return convertView;
-        }
+    static class GroupViewHolder extends RecyclerView.ViewHolder {
 
-        @Override
-        public boolean hasStableIds() {
-            return false;
+        TextView header;
+
+        GroupViewHolder(View itemView) {
+            super(itemView);
+            header = (TextView) itemView.findViewById(R.id.notificationListHeader);
+            header.setTypeface(null, Typeface.BOLD);
         }
 
-        @Override
-        public boolean isChildSelectable(int groupPosition, int childPosition) {
-            return true;
+    }
+
+    static class NotificationViewHolder extends RecyclerView.ViewHolder {
+
+        TextView title, date;
+
+        NotificationViewHolder(View itemView) {
+            super(itemView);
+            title = (TextView) itemView.findViewById(R.id.titleNotifications);
+            date = (TextView) itemView.findViewById(R.id.dateNotifications);
         }
+
     }
 
-}
\ No newline at end of file
+}
@@ -5,51 +5,50 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v4.util.Pair;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageButton;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.upc.fib.racopocket.Activities.MainMenuActivity;
+import com.upc.fib.racopocket.Models.EventModel;
 import com.upc.fib.racopocket.R;
-import com.upc.fib.racopocket.Utils.ColorScheme;
 import com.upc.fib.racopocket.Utils.Constants;
+import com.upc.fib.racopocket.Utils.DataRepository;
+import com.upc.fib.racopocket.Utils.DividerDecoration;
+import com.upc.fib.racopocket.Utils.EventIndex;
 import com.upc.fib.racopocket.Utils.FileUtils;
 import com.upc.fib.racopocket.Utils.PreferencesUtils;
+import com.upc.fib.racopocket.Utils.RecyclerListAdapter;
 
-import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import biweekly.ICalendar;
-import biweekly.component.VEvent;
-import biweekly.io.text.ICalReader;
-import biweekly.property.DateStart;
 import oauth.signpost.OAuthConsumer;
 import oauth.signpost.basic.DefaultOAuthConsumer;
 
 
 public class ScheduleMainMenu extends Fragment {
+
+    private static final long SCHEDULE_WINDOW = 180L * 24 * 60 * 60 * 1000;
+
     ImageButton update;
-    ListView eventsList;
+    RecyclerView eventsList;
     ProgressBar progressBar;
 
     boolean workInProgress;
 
-    HashMap<String, Integer> colorSchemeMap;
     SimpleDateFormat formatDate = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
 
+    EventsAdapter eventsAdapter;
+
     OAuthConsumer consumer = new DefaultOAuthConsumer(Constants.CONSUMER_KEY, Constants.CONSUMER_SECRET);
 
     @Override
@@ -58,7 +57,7 @@ public class ScheduleMainMenu extends Fragment {
 
         View rootView = inflater.inflate(R.layout.schedule_main_menu, container, false);
         update = (ImageButton) rootView.findViewById(R.id.updateSchedule);
-        eventsList = (ListView) rootView.findViewById(R.id.listViewSchedule);
+        eventsList = (RecyclerView) rootView.findViewById(R.id.listViewSchedule);
         progressBar = (ProgressBar) rootView.findViewById(R.id.progressBarSchedule);
 
         return rootView;
@@ -83,12 +82,16 @@ public class ScheduleMainMenu extends Fragment {
             }
         });
 
-        colorSchemeMap = new ColorScheme(getContext()).setColorsToSubjects();
+        eventsAdapter = new EventsAdapter();
+        eventsList.setLayoutManager(new LinearLayoutManager(getContext()));
+        eventsList.addItemDecoration(new DividerDecoration(getContext(), Color.parseColor("#0E537B")));
+        eventsList.setAdapter(eventsAdapter);
+
         new GetSchedule().execute(false);
 
     }
 
-    private class GetSchedule extends AsyncTask<Boolean, Void, Pair<Integer, ICalReader>> {
+    private class GetSchedule extends AsyncTask<Boolean, Void, Pair<Integer, List<EventModel>>> {
 
         @Override
         protected void onPreExecute() {
@@ -97,7 +100,7 @@ public class ScheduleMainMenu extends Fragment {
         }
 
         @Override
-        protected Pair<Integer, ICalReader> doInBackground(Boolean... params) {
+        protected Pair<Integer, List<EventModel>> doInBackground(Boolean... params) {
             Boolean forceUpdate = params[0];
             int statusCode = 200;
             FileUtils fileUtils = new FileUtils(getContext().getApplicationContext(), consumer);
@@ -111,75 +114,61 @@ public class ScheduleMainMenu extends Fragment {
                 }
             }
 
-            return new Pair<>(statusCode, fileUtils.readFileToICalReader("calendari-portada.ics"));
+            EventIndex eventIndex = new EventIndex(getContext().getApplicationContext());
+            Map<String, Integer> colorSchemeMap = DataRepository.getInstance(getContext()).getColorScheme();
+            return new Pair<>(statusCode, eventIndex.getUpcomingEvents("calendari-portada.ics", colorSchemeMap, Color.WHITE, System.currentTimeMillis(), SCHEDULE_WINDOW));
         }
 
         @Override
-        protected void onPostExecute(Pair<Integer, ICalReader> response) {
-            if (response.first != 200) {
+        protected void onPostExecute(Pair<Integer, List<EventModel>> response) {
+            if (!FileUtils.isSuccessful(response.first)) {
                 Toast.makeText(getContext().getApplicationContext(), getResources().getString(R.string.connection_problems), Toast.LENGTH_LONG).show();
             }
-            parseICalReader(response.second);
+            if (response.second != null) {
+                eventsAdapter.setItems(response.second);
+            }
             workInProgress = false;
             progressBar.setVisibility(View.GONE);
         }
     }
 
-    private void parseICalReader(ICalReader iCalReader) {
-        try {
-            ICalendar iCalendar;
-            final List<Pair<String, DateStart>> scheduleData = new ArrayList<>();
-            while ((iCalendar = iCalReader.readNext()) != null) {
-                for (VEvent event : iCalendar.getEvents()) {
-                    String summary = event.getSummary().getValue();
-                    DateStart date = event.getDateStart();
-                    if (date.getValue().after(new Date()))
-                        scheduleData.add(new Pair<>(summary, date));
-                }
-            }
+    private class EventsAdapter extends RecyclerListAdapter<EventModel, EventViewHolder> {
 
-            Collections.sort(scheduleData, new Comparator<Pair<String, DateStart>>() {
-                public int compare(Pair<String, DateStart> o1, Pair<String, DateStart> o2) {
-                    return o1.second.getValue().compareTo(o2.second.getValue());
-                }
-            });
-
-            final ArrayAdapter<Pair<String, DateStart>> adapter = new ArrayAdapter<Pair<String, DateStart>>(getContext(), R.layout.schedule_item_list, R.id.summarySchedule, scheduleData) {
-                @Override
-                public View getView(int position, View convertView, ViewGroup parent) {
-                    View view = super.getView(position, convertView, parent);
-                    TextView text1 = (TextView) view.findViewById(R.id.summarySchedule);
-                    TextView text2 = (TextView) view.findViewById(R.id.dateSchedule);
-
-                    String summary = scheduleData.get(position).first;
-                    String date = formatDate.format(scheduleData.get(position).second.getValue());
-
-                    text1.setText(summary);
-                    text2.setText(date);
-
-                    int color = Color.parseColor("#FFFFFF");
-                    for (Map.Entry<String, Integer> entry : colorSchemeMap.entrySet()) {
-                        if (summary.toLowerCase().contains(entry.getKey().toLowerCase())) {
-                            color = entry.getValue();
-                            break;
-                        }
-                    }
-                    view.setBackgroundColor(color);
+        @Override
+        protected String getItemKey(EventModel item) {
+            return item.getStart() + " " + item.getSummary();
+        }
 
-                    return view;
-                }
-            };
-
-            eventsList.setAdapter(adapter);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                iCalReader.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        @Override
+        protected boolean areContentsTheSame(EventModel oldItem, EventModel newItem) {
+            return oldItem.getColor() == newItem.getColor();
         }
+
+        @Override
+        protected EventViewHolder onCreateItemViewHolder(ViewGroup parent, int viewType) {
+            return new EventViewHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.schedule_item_list, parent, false));
+        }
+
+        @Override
+        public void onBindViewHolder(EventViewHolder holder, int position) {
+            EventModel event = getItem(position);
+            holder.summary.setText(event.getSummary());
+            holder.date.setText(formatDate.format(new Date(event.getStart())));
+            holder.itemView.setBackgroundColor(event.getColor());
+        }
+
+    }
+
+    static class EventViewHolder extends RecyclerView.ViewHolder {
+
+        TextView summary, date;
+
+        EventViewHolder(View itemView) {
+            super(itemView);
+            summary = (TextView) itemView.findViewById(R.id.summarySchedule);
+            date = (TextView) itemView.findViewById(R.id.dateSchedule);
+        }
+
     }
 
-}
\ No newline at end of file
+}
@@ -1,40 +1,66 @@
 package com.upc.fib.racopocket.Fragments;
 
 import android.content.Context;
+import android.content.DialogInterface;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
-import android.support.v4.util.Pair;
+import android.support.v7.app.AlertDialog;
 import android.text.Html;
+import android.text.SpannableStringBuilder;
 import android.text.method.LinkMovementMethod;
+import android.util.Log;
+import android.util.LruCache;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputMethodManager;
-import android.widget.ArrayAdapter;
+import android.widget.AdapterView;
 import android.widget.AutoCompleteTextView;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.upc.fib.racopocket.Activities.MainMenuActivity;
+import com.upc.fib.racopocket.Models.SubjectModel;
 import com.upc.fib.racopocket.R;
+import com.upc.fib.racopocket.Utils.CatalogueIndex;
+import com.upc.fib.racopocket.Utils.CatalogueManifest;
+import com.upc.fib.racopocket.Utils.Constants;
+import com.upc.fib.racopocket.Utils.DataRepository;
 import com.upc.fib.racopocket.Utils.FileUtils;
+import com.upc.fib.racopocket.Utils.SearchTokenizer;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 public class SubjectInfoMainMenu extends Fragment {
+    private static final int MAX_SUGGESTIONS = 8;
+    private static final int MAX_RESULTS = 20;
+    private static final int RENDER_CACHE_SIZE = 8;
+
+    // Shared between fragment instances, so going back to a recently viewed subject is instant
+    private static final LruCache<String, RenderedSubject> RENDERED_SUBJECTS = new LruCache<>(RENDER_CACHE_SIZE);
+
     AutoCompleteTextView subjectSelector;
     TextView subjectName, subjectData, subjectBibliography;
     ProgressBar progressBar;
 
     String currentCode;
-    ArrayList<Pair<String, String>> subjects_name = new ArrayList<>();
+    SubjectSuggestionsAdapter suggestionsAdapter;
+    // Read from the filtering thread of the suggestions
+    volatile CatalogueIndex catalogueIndex;
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -68,126 +94,359 @@ public class SubjectInfoMainMenu extends Fragment {
             }
         });
 
-        loadSubjectsList();
+        subjectSelector.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                openSubject(suggestionsAdapter.getItem(position));
+            }
+        });
+
+        suggestionsAdapter = new SubjectSuggestionsAdapter();
+        subjectSelector.setAdapter(suggestionsAdapter);
+
+        new LoadCatalogueIndex().execute();
     }
 
     private void performSearch() {
+        String query = subjectSelector.getText().toString();
+        if (query.trim().length() == 0) {
+            Toast.makeText(getActivity(), R.string.empty_field, Toast.LENGTH_SHORT).show();
+            subjectSelector.setText("");
+            return;
+        }
+
+        hideKeyboard();
+        subjectSelector.dismissDropDown();
+        new SearchSubjects().execute(query);
+    }
+
+    private void openSubject(SubjectModel subject) {
+        hideKeyboard();
+        subjectSelector.dismissDropDown();
+        subjectSelector.setText("");
+
+        currentCode = subject.getUpcCode();
+        showSubjectInfo(currentCode);
+    }
+
+    private static String getSubjectTitle(SubjectModel subject) {
+        return subject.getName().length() > 0 ? subject.getId() + " - " + subject.getName() : subject.getId();
+    }
+
+    private void hideKeyboard() {
         View view = getActivity().getCurrentFocus();
         if (view != null) {
             InputMethodManager imm = (InputMethodManager) getActivity().getSystemService(Context.INPUT_METHOD_SERVICE);
             imm.hideSoftInputFromWindow(view.getWindowToken(), 0);
         }
+    }
 
-        String subjectName = subjectSelector.getText().toString().toUpperCase();
-        if (subjectName.length() == 0) {
-            Toast.makeText(getActivity(), R.string.empty_field, Toast.LENGTH_SHORT).show();
+    private void showSubjectInfo(String upcCode) {
+        File file = new File(getContext().getFilesDir(), CatalogueManifest.getSubjectFile(upcCode));
+        Locale locale = getResources().getConfiguration().locale;
+        RenderedSubject renderedSubject = RENDERED_SUBJECTS.get(upcCode);
+        if (renderedSubject != null && renderedSubject.isValid(file, locale)) {
+            applyRenderedSubject(renderedSubject);
         } else {
-            Boolean found = false;
-            for (int i = 0; i < subjects_name.size() && !found; i++) {
-                if (subjects_name.get(i).first.equals(subjectName)) {
+            new RenderSubject().execute(upcCode);
+        }
+    }
 
-                    found = true;
-                    currentCode = subjects_name.get(i).second;
-                    String fileName = "subject_" + currentCode + ".json";
+    private void applyRenderedSubject(RenderedSubject renderedSubject) {
+        subjectName.setText(renderedSubject.name);
+        subjectData.setText(renderedSubject.data);
+        subjectBibliography.setText(renderedSubject.bibliography);
+    }
+
+    /**
+     * Builds the whole subject detail off the UI thread, so each text view is laid out once.
+     */
+    private class RenderSubject extends AsyncTask<String, Void, RenderedSubject> {
+
+        String upcCode, credits, descriptionObjectives, bibliography;
+        Locale locale;
+        FileUtils fileUtils;
+        File filesDir;
+
+        @Override
+        protected void onPreExecute() {
+            progressBar.setVisibility(View.VISIBLE);
+            credits = getResources().getString(R.string.credits);
+            descriptionObjectives = getResources().getString(R.string.description_objectives);
+            bibliography = getResources().getString(R.string.bibliography);
+            locale = getResources().getConfiguration().locale;
+            fileUtils = new FileUtils(getContext().getApplicationContext(), null);
+            filesDir = getContext().getFilesDir();
+        }
+
+        @Override
+        protected RenderedSubject doInBackground(String... params) {
+            upcCode = params[0];
+            String fileName = CatalogueManifest.getSubjectFile(upcCode);
+            File file = new File(filesDir, fileName);
+            long fileLength = file.length();
+            long fileModified = file.lastModified();
+
+            String subjectInfo = fileUtils.readFileToString(fileName);
+            if (subjectInfo == null) {
+                return null;
+            }
+
+            SpannableStringBuilder name = new SpannableStringBuilder();
+            SpannableStringBuilder data = new SpannableStringBuilder();
+            SpannableStringBuilder books = new SpannableStringBuilder();
+            try {
+                JSONObject object = new JSONObject(subjectInfo);
+
+                name.append(object.getString("nom")).append("\n");
+
+                JSONArray teachers = object.getJSONArray("professors");
+                for (int i = 0; i < teachers.length(); i++) {
+                    JSONObject teacher = teachers.getJSONObject(i);
+                    data.append(Html.fromHtml("- " + "<b>" + teacher.getString("nom") + ":</b> <br>\t\t" + teacher.getString("email") + "<br><br>"));
+                }
 
-                    showSubjectInfo(fileName);
+                data.append(Html.fromHtml("<br><b>" + credits + ":</b> " + object.getInt("credits") + "<br><br>"));
+                data.append(Html.fromHtml("<br><b>" + descriptionObjectives + ":</b><br><br>"));
 
+                String objectives = object.getString("objectius");
+                if (!objectives.equals("null")) {
+                    data.append(Html.fromHtml("<i>" + objectives + "</i><br><br>"));
                 }
+
+                JSONArray descriptions = object.getJSONArray("descripcio");
+                for (int i = 0; i < descriptions.length(); i++) {
+                    data.append("- ").append(descriptions.getString(i)).append("\n\n");
+                }
+
+                books.append(Html.fromHtml("<br><b>" + bibliography + ":</b><br><br>"));
+
+                JSONArray bibliographyJSONArray = object.getJSONArray("bibliografia");
+                for (int i = 0; i < bibliographyJSONArray.length(); i++) {
+                    JSONObject book = bibliographyJSONArray.getJSONObject(i);
+                    books.append(Html.fromHtml("- " + "<a href=\"" + book.getString("url") + "\">" + book.getString("text") + "</a><br><br>"));
+                }
+            } catch (JSONException e) {
+                // Nothing is cached, so the subject is rendered again once its file is fixed
+                Log.e(Constants.TAG_JSON, "JSON parse failed: " + e.toString());
+                return null;
+            }
+
+            RenderedSubject renderedSubject = new RenderedSubject(name, data, books, fileLength, fileModified, locale);
+            RENDERED_SUBJECTS.put(upcCode, renderedSubject);
+            return renderedSubject;
+        }
+
+        @Override
+        protected void onPostExecute(RenderedSubject response) {
+            progressBar.setVisibility(View.GONE);
+            if (!isAdded()) {
+                return;
             }
-            if (!found) {
+            // A slower render of a previously opened subject must neither replace the current one nor report its failure
+            if (!upcCode.equals(currentCode)) {
+                return;
+            }
+            if (response == null) {
                 Toast.makeText(getActivity(), getResources().getString(R.string.data_not_found), Toast.LENGTH_SHORT).show();
+            } else {
+                applyRenderedSubject(response);
             }
         }
-
-        subjectSelector.setText("");
     }
 
+    /**
+     * Subject detail ready to be shown, along with what it was rendered from.
+     */
+    private static class RenderedSubject {
+
+        private CharSequence name;
+        private CharSequence data;
+        private CharSequence bibliography;
+        private long fileLength;
+        private long fileModified;
+        private Locale locale;
+
+        RenderedSubject(CharSequence name, CharSequence data, CharSequence bibliography, long fileLength, long fileModified, Locale locale) {
+            this.name = name;
+            this.data = data;
+            this.bibliography = bibliography;
+            this.fileLength = fileLength;
+            this.fileModified = fileModified;
+            this.locale = locale;
+        }
 
-    private void loadSubjectsList() {
-        FileUtils fileUtils = new FileUtils(getContext().getApplicationContext(), null);
-        String subjectsListData = fileUtils.readFileToString("llista.json");
-        try {
-            JSONArray subjectsJSONArray = new JSONArray(subjectsListData);
-            for (int i = 0; i < subjectsJSONArray.length(); i++) {
-                JSONObject subjectJSONObject = subjectsJSONArray.getJSONObject(i);
-                // Key = subject_id, Value = upc_code
-                String subjectId = subjectJSONObject.getString("idAssig");
-                String upcCode = subjectJSONObject.getString("codi_upc");
-                Pair<String, String> pair = new Pair<>(subjectId, upcCode);
-                subjects_name.add(pair);
-            }
-        } catch (JSONException e) {
-            e.printStackTrace();
+        /**
+         * Checks if the subject file and the labels language are still the ones it was rendered with.
+         * @param file Subject file.
+         * @param locale Current locale.
+         * @return Boolean value representing if it can be shown as is.
+         */
+        boolean isValid(File file, Locale locale) {
+            return this.fileLength == file.length() && this.fileModified == file.lastModified() && this.locale.equals(locale);
         }
 
-        ArrayList<String> subjectsId = new ArrayList<>();
-        for (int i = 0; i < subjects_name.size(); i++) {
-            subjectsId.add(subjects_name.get(i).first);
+    }
+
+    private class LoadCatalogueIndex extends AsyncTask<Void, Void, CatalogueIndex> {
+
+        // Taken on creation, the fragment may be detached by the time the task runs
+        Context applicationContext = getContext().getApplicationContext();
+
+        @Override
+        protected void onPreExecute() {
+            progressBar.setVisibility(View.VISIBLE);
         }
 
-        ArrayAdapter<String> adapter = new ArrayAdapter<>(getContext(), android.R.layout.simple_list_item_1, subjectsId);
-        subjectSelector.setAdapter(adapter);
+        @Override
+        protected CatalogueIndex doInBackground(Void... params) {
+            return DataRepository.getInstance(applicationContext).getCatalogueIndex();
+        }
 
+        @Override
+        protected void onPostExecute(CatalogueIndex response) {
+            catalogueIndex = response;
+            progressBar.setVisibility(View.GONE);
+            if (subjectSelector.getText().length() > 0) {
+                suggestionsAdapter.getFilter().filter(subjectSelector.getText());
+            }
+        }
     }
 
-    private void showSubjectInfo(String fileName) {
-        subjectName.setText("");
-        subjectData.setText("");
-        subjectBibliography.setText("");
+    /**
+     * Opens the subject whose initials are the query. Otherwise the query is searched in the full
+     * text of the subjects, falling back to the catalogue search when nothing matches there.
+     */
+    private class SearchSubjects extends AsyncTask<String, Void, List<SubjectModel>> {
 
-        FileUtils fileUtils = new FileUtils(getContext().getApplicationContext(), null);
-        String subjectInfo = fileUtils.readFileToString(fileName);
+        // Taken on creation, the fragment may be detached by the time the task runs
+        Context applicationContext = getContext().getApplicationContext();
 
-        try {
-            JSONObject object = new JSONObject(subjectInfo);
-            String data;
+        @Override
+        protected void onPreExecute() {
+            progressBar.setVisibility(View.VISIBLE);
+        }
 
-            data = object.getString("nom") + "\n";
-            subjectName.append(data);
+        @Override
+        protected List<SubjectModel> doInBackground(String... params) {
+            String query = params[0];
+            DataRepository dataRepository = DataRepository.getInstance(applicationContext);
+            CatalogueIndex index = dataRepository.getCatalogueIndex();
 
-            JSONArray teachers = object.getJSONArray("professors");
-            if (teachers != null) {
-                for (int i = 0; i < teachers.length(); i++) {
-                    JSONObject teacher = teachers.getJSONObject(i);
-                    data = "- " + "<b>" + teacher.getString("nom") + ":</b> <br>\t\t" + teacher.getString("email") + "<br><br>";
-                    subjectData.append(Html.fromHtml(data));
+            List<SubjectModel> results = index.search(query, MAX_RESULTS);
+            if (!results.isEmpty() && SearchTokenizer.fold(results.get(0).getId()).equals(SearchTokenizer.fold(query.trim()))) {
+                return results.subList(0, 1);
+            }
+
+            List<SubjectModel> textResults = new ArrayList<>();
+            for (String upcCode : dataRepository.getSubjectTextIndex().search(query, MAX_RESULTS)) {
+                SubjectModel subject = index.getSubject(upcCode);
+                if (subject != null) {
+                    textResults.add(subject);
                 }
             }
+            return textResults.isEmpty() ? results : textResults;
+        }
 
-            data = "<br><b>" + getResources().getString(R.string.credits) + ":</b> " + object.getInt("credits") + "<br><br>";
-            subjectData.append(Html.fromHtml(data));
+        @Override
+        protected void onPostExecute(final List<SubjectModel> response) {
+            progressBar.setVisibility(View.GONE);
+            if (!isAdded()) {
+                return;
+            }
+            subjectSelector.setText("");
+            if (response.isEmpty()) {
+                Toast.makeText(getActivity(), getResources().getString(R.string.data_not_found), Toast.LENGTH_SHORT).show();
+            } else if (response.size() == 1) {
+                openSubject(response.get(0));
+            } else {
+                CharSequence[] items = new CharSequence[response.size()];
+                for (int i = 0; i < items.length; i++) {
+                    items[i] = getSubjectTitle(response.get(i));
+                }
 
-            data = "<br><b>" + getResources().getString(R.string.description_objectives) + ":</b><br><br>";
-            subjectData.append(Html.fromHtml(data));
+                AlertDialog.Builder builder = new AlertDialog.Builder(getContext());
+                builder.setTitle(R.string.search_results);
+                builder.setItems(items, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        openSubject(response.get(which));
+                    }
+                });
+                builder.show();
+            }
+        }
+    }
+
+    /**
+     * Suggests the subjects matching the written text, searched in the catalogue index on the filtering thread.
+     */
+    private class SubjectSuggestionsAdapter extends BaseAdapter implements Filterable {
 
-            data = object.getString("objectius");
-            if (!data.equals("null")) {
-                data = "<i>" + data + "</i><br><br>";
-                subjectData.append(Html.fromHtml(data));
+        private List<SubjectModel> suggestions = new ArrayList<>();
+
+        private Filter filter = new Filter() {
+            @Override
+            protected FilterResults performFiltering(CharSequence constraint) {
+                FilterResults filterResults = new FilterResults();
+                CatalogueIndex index = catalogueIndex;
+                if (constraint != null && index != null) {
+                    List<SubjectModel> results = index.search(constraint.toString(), MAX_SUGGESTIONS);
+                    filterResults.values = results;
+                    filterResults.count = results.size();
+                }
+                return filterResults;
             }
 
-            JSONArray descriptions = object.getJSONArray("descripcio");
-            if (descriptions != null) {
-                for (int i = 0; i < descriptions.length(); i++) {
-                    data = "- " + descriptions.getString(i) + "\n\n";
-                    subjectData.append(data);
+            @Override
+            @SuppressWarnings("unchecked")
+            protected void publishResults(CharSequence constraint, FilterResults results) {
+                suggestions = results.values != null ? (List<SubjectModel>) results.values : new ArrayList<SubjectModel>();
+                if (results.count > 0) {
+                    notifyDataSetChanged();
+                } else {
+                    notifyDataSetInvalidated();
                 }
             }
 
-            data = "<br><b>" + getResources().getString(R.string.bibliography) + ":</b><br><br>";
-            subjectBibliography.append(Html.fromHtml(data));
+            @Override
+            public CharSequence convertResultToString(Object resultValue) {
+                return ((SubjectModel) resultValue).getId();
+            }
+        };
 
-            JSONArray bibliography = object.getJSONArray("bibliografia");
-            if (bibliography != null) {
-                for (int i = 0; i < bibliography.length(); i++) {
-                    JSONObject book = bibliography.getJSONObject(i);
-                    data = "- " + "<a href=\"" + book.getString("url") + "\">" + book.getString("text") + "</a><br><br>";
-                    subjectBibliography.append(Html.fromHtml(data));
-                }
+        @Override
+        public int getCount() {
+            return suggestions.size();
+        }
+
+        @Override
+        public SubjectModel getItem(int position) {
+            return suggestions.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            if (convertView == null) {
+                convertView = LayoutInflater.from(parent.getContext()).inflate(android.R.layout.simple_list_item_1, parent, false);
             }
-        } catch (JSONException e) {
-            e.printStackTrace();
+
+            SubjectModel subject = suggestions.get(position);
+            TextView textView = (TextView) convertView.findViewById(android.R.id.text1);
+            textView.setText(getSubjectTitle(subject));
+            return convertView;
         }
+
+        @Override
+        public Filter getFilter() {
+            return filter;
+        }
+
     }
 
-}
\ No newline at end of file
+}
@@ -1,41 +1,40 @@
 package com.upc.fib.racopocket.Fragments;
 
+import android.graphics.Color;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageButton;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import com.upc.fib.racopocket.Activities.MainMenuActivity;
 import com.upc.fib.racopocket.Models.TimetableSubjectModel;
 import com.upc.fib.racopocket.R;
-import com.upc.fib.racopocket.Utils.ColorScheme;
-import com.upc.fib.racopocket.Utils.FileUtils;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.upc.fib.racopocket.Utils.DataRepository;
+import com.upc.fib.racopocket.Utils.DividerDecoration;
+import com.upc.fib.racopocket.Utils.RecyclerListAdapter;
 
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.HashMap;
+import java.util.List;
 
 public class TimetableMainMenu extends Fragment {
 
     ImageButton previousDay, nextDay;
     TextView currentDayText;
-    ListView listView;
+    RecyclerView listView;
     ProgressBar progressBar;
 
     int currentDay;
-    HashMap<String, Integer> colorSchemeMap;
-    ArrayList<ArrayList<TimetableSubjectModel>> classroomsInfo;
+    List<List<TimetableSubjectModel>> classroomsInfo;
+
+    TimetableAdapter timetableAdapter;
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -44,7 +43,7 @@ public class TimetableMainMenu extends Fragment {
 
         nextDay = (ImageButton) rootView.findViewById(R.id.nextDayTimetable);
         previousDay = (ImageButton) rootView.findViewById(R.id.previousDayTimetable);
-        listView = (ListView) rootView.findViewById(R.id.listViewTimetable);
+        listView = (RecyclerView) rootView.findViewById(R.id.listViewTimetable);
         progressBar = (ProgressBar) rootView.findViewById(R.id.progressBarTimetable);
         currentDayText = (TextView) rootView.findViewById(R.id.currentDatTimetable);
 
@@ -83,7 +82,10 @@ public class TimetableMainMenu extends Fragment {
         });
 
         writeWeekDay();
-        colorSchemeMap = new ColorScheme(getContext()).setColorsToSubjects();
+        timetableAdapter = new TimetableAdapter();
+        listView.setLayoutManager(new LinearLayoutManager(getContext()));
+        listView.addItemDecoration(new DividerDecoration(getContext(), Color.parseColor("#0E537B")));
+        listView.setAdapter(timetableAdapter);
         new GetTimetableData().execute();
     }
 
@@ -111,7 +113,7 @@ public class TimetableMainMenu extends Fragment {
         currentDayText.setText(day);
     }
 
-    private class GetTimetableData extends AsyncTask<Void, Void, String> {
+    private class GetTimetableData extends AsyncTask<Void, Void, List<List<TimetableSubjectModel>>> {
 
         @Override
         protected void onPreExecute() {
@@ -120,33 +122,13 @@ public class TimetableMainMenu extends Fragment {
         }
 
         @Override
-        protected String doInBackground(Void... params) {
-            FileUtils fileUtils = new FileUtils(getContext().getApplicationContext(), null);
-            return fileUtils.readFileToString("horari-setmanal.json");
+        protected List<List<TimetableSubjectModel>> doInBackground(Void... params) {
+            return DataRepository.getInstance(getContext()).getTimetable();
         }
 
         @Override
-        protected void onPostExecute(String response) {
-            if (response != null) {
-                try {
-                    JSONArray timetableJSONArray = new JSONArray(response);
-                    for (int i = 0; i < timetableJSONArray.length(); i++) {
-                        JSONObject currentClass = timetableJSONArray.getJSONObject(i);
-                        String subject = currentClass.getString("Assig");
-                        String group = currentClass.getString("Grup") + currentClass.getString("Tipus");
-                        String timeStart = currentClass.getString("HoraInici") + "-" + currentClass.getString("HoraFi") + "h";
-                        String classroom = currentClass.getString("Aules");
-                        classroom = classroom.replace("[", "");
-                        classroom = classroom.replace("]", "");
-                        classroom = classroom.replace("\"", "");
-                        classroom = classroom.replace(",", ", ");
-                        classroomsInfo.get(currentClass.getInt("Dia") - 1).add(new TimetableSubjectModel(subject, group, timeStart, classroom));
-                    }
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
-            }
-
+        protected void onPostExecute(List<List<TimetableSubjectModel>> response) {
+            classroomsInfo = response;
             printTimetable();
             progressBar.setVisibility(View.GONE);
         }
@@ -154,31 +136,48 @@ public class TimetableMainMenu extends Fragment {
     }
 
     void printTimetable() {
-        final ArrayAdapter<TimetableSubjectModel> adapter = new ArrayAdapter<TimetableSubjectModel>(getContext(), R.layout.timetable_item_list, R.id.timetableStartTime, classroomsInfo.get(currentDay - 1)) {
-            @Override
-            public View getView(int position, View convertView, ViewGroup parent) {
-                View view = super.getView(position, convertView, parent);
-                TextView text1 = (TextView) view.findViewById(R.id.timetableStartTime);
-                TextView text2 = (TextView) view.findViewById(R.id.timetableName);
-                TextView text3 = (TextView) view.findViewById(R.id.timetableClassroom);
+        timetableAdapter.setItems(classroomsInfo.get(currentDay - 1));
+    }
+
+    private class TimetableAdapter extends RecyclerListAdapter<TimetableSubjectModel, TimetableViewHolder> {
+
+        @Override
+        protected String getItemKey(TimetableSubjectModel item) {
+            return item.getStartTime() + " " + item.getTitle();
+        }
+
+        @Override
+        protected boolean areContentsTheSame(TimetableSubjectModel oldItem, TimetableSubjectModel newItem) {
+            return oldItem.getClassroom().equals(newItem.getClassroom()) && oldItem.getColor() == newItem.getColor();
+        }
 
-                String subject = classroomsInfo.get(currentDay - 1).get(position).getName();
+        @Override
+        protected TimetableViewHolder onCreateItemViewHolder(ViewGroup parent, int viewType) {
+            return new TimetableViewHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.timetable_item_list, parent, false));
+        }
 
-                String name = subject + " " + classroomsInfo.get(currentDay - 1).get(position).getGroup();
-                String startTime = classroomsInfo.get(currentDay - 1).get(position).getStartTime();
-                String classroom = classroomsInfo.get(currentDay - 1).get(position).getClassroom();
+        @Override
+        public void onBindViewHolder(TimetableViewHolder holder, int position) {
+            TimetableSubjectModel timetableSubject = getItem(position);
+            holder.startTime.setText(timetableSubject.getStartTime());
+            holder.name.setText(timetableSubject.getTitle());
+            holder.classroom.setText(timetableSubject.getClassroom());
+            holder.itemView.setBackgroundColor(timetableSubject.getColor());
+        }
 
-                text1.setText(startTime);
-                text2.setText(name);
-                text3.setText(classroom);
+    }
 
-                int color = colorSchemeMap.get(subject);
-                view.setBackgroundColor(color);
+    static class TimetableViewHolder extends RecyclerView.ViewHolder {
+
+        TextView startTime, name, classroom;
+
+        TimetableViewHolder(View itemView) {
+            super(itemView);
+            startTime = (TextView) itemView.findViewById(R.id.timetableStartTime);
+            name = (TextView) itemView.findViewById(R.id.timetableName);
+            classroom = (TextView) itemView.findViewById(R.id.timetableClassroom);
+        }
 
-                return view;
-            }
-        };
-        listView.setAdapter(adapter);
     }
 
 }
@@ -4,6 +4,7 @@ public class ClassroomModel {
 
     String name;
     int availability;
+    int usualAvailability;
 
     /**
      * ClassroomModel constructor.
@@ -11,8 +12,19 @@ public class ClassroomModel {
      * @param availability Classroom availability.
      */
     public ClassroomModel(String name, int availability) {
+        this(name, availability, -1);
+    }
+
+    /**
+     * ClassroomModel constructor.
+     * @param name Classroom name.
+     * @param availability Classroom availability.
+     * @param usualAvailability Free places the classroom usually has at this time, -1 if unknown.
+     */
+    public ClassroomModel(String name, int availability, int usualAvailability) {
         this.name = name;
         this.availability = availability;
+        this.usualAvailability = usualAvailability;
     }
 
     /**
@@ -31,4 +43,12 @@ public class ClassroomModel {
         return this.availability;
     }
 
+    /**
+     * Gets the free places the classroom usually has at this time, from the occupancy history.
+     * @return Integer value representing the usual availability, -1 if unknown.
+     */
+    public int getUsualAvailability() {
+        return this.usualAvailability;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.upc.fib.racopocket.Models;
+
+public class EventModel {
+
+    private String summary;
+    private long start;
+    private String subjectId;
+    private int color;
+
+    /**
+     * EventModel constructor.
+     * @param summary Event summary.
+     * @param start Event start time in milliseconds.
+     * @param subjectId Identifier of the subject the event belongs to, null if none.
+     * @param color Color of the event subject.
+     */
+    public EventModel(String summary, long start, String subjectId, int color) {
+        this.summary = summary;
+        this.start = start;
+        this.subjectId = subjectId;
+        this.color = color;
+    }
+
+    /**
+     * Gets the event summary.
+     * @return String object with the event summary.
+     */
+    public String getSummary() {
+        return this.summary;
+    }
+
+    /**
+     * Gets the event start time.
+     * @return Long value with the milliseconds since epoch.
+     */
+    public long getStart() {
+        return this.start;
+    }
+
+    /**
+     * Gets the subject the event belongs to.
+     * @return String object with the subject identifier, null if none.
+     */
+    public String getSubjectId() {
+        return this.subjectId;
+    }
+
+    /**
+     * Gets the color of the subject the event belongs to.
+     * @return Integer value with the color.
+     */
+    public int getColor() {
+        return this.color;
+    }
+
+}
@@ -5,17 +5,23 @@ public class NotificationModel {
     private String title;
     private String pubDate;
     private String link;
+    private long timestamp;
+    private String displayDate;
 
     /**
      * NotificationModel constructor.
      * @param title Notification title.
      * @param pubDate Notification publication date.
      * @param link Notification link.
+     * @param timestamp Notification publication time in milliseconds.
+     * @param displayDate Notification publication date, formatted to be shown.
      */
-    public NotificationModel(String title, String pubDate, String link) {
+    public NotificationModel(String title, String pubDate, String link, long timestamp, String displayDate) {
         this.title = title;
         this.pubDate = pubDate;
         this.link = link;
+        this.timestamp = timestamp;
+        this.displayDate = displayDate;
     }
 
     /**
@@ -42,4 +48,20 @@ public class NotificationModel {
         return this.link;
     }
 
+    /**
+     * Gets the notification publication time.
+     * @return Long value with the milliseconds since epoch, 0 if the pubDate is malformed.
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * Gets the notification publication date ready to be displayed.
+     * @return String object representing the formatted date.
+     */
+    public String getDisplayDate() {
+        return this.displayDate;
+    }
+
 }
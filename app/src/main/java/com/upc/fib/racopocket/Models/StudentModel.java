@@ -0,0 +1,34 @@
+package com.upc.fib.racopocket.Models;
+
+public class StudentModel {
+
+    private String name;
+    private String surname;
+
+    /**
+     * StudentModel constructor.
+     * @param name Student name.
+     * @param surname Student surnames.
+     */
+    public StudentModel(String name, String surname) {
+        this.name = name;
+        this.surname = surname;
+    }
+
+    /**
+     * Gets the student name.
+     * @return String object representing the student name.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the student surnames.
+     * @return String object representing the student surnames.
+     */
+    public String getSurname() {
+        return this.surname;
+    }
+
+}
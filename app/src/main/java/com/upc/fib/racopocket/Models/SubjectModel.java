@@ -0,0 +1,45 @@
+package com.upc.fib.racopocket.Models;
+
+public class SubjectModel {
+
+    private String id;
+    private String upcCode;
+    private String name;
+
+    /**
+     * SubjectModel constructor.
+     * @param id Subject initials (idAssig).
+     * @param upcCode Subject UPC code (codi_upc).
+     * @param name Subject full name.
+     */
+    public SubjectModel(String id, String upcCode, String name) {
+        this.id = id;
+        this.upcCode = upcCode;
+        this.name = name;
+    }
+
+    /**
+     * Gets the subject initials.
+     * @return String object representing the subject initials.
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * Gets the subject UPC code.
+     * @return String object representing the subject UPC code.
+     */
+    public String getUpcCode() {
+        return this.upcCode;
+    }
+
+    /**
+     * Gets the subject full name.
+     * @return String object representing the subject name, empty if unknown.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+}
@@ -6,6 +6,9 @@ public class TimetableSubjectModel {
     String group;
     String startTime;
     String classroom;
+    String title;
+    int startMinutes;
+    int color;
 
     /**
      * TimetableSubjectModel constructor.
@@ -13,12 +16,17 @@ public class TimetableSubjectModel {
      * @param group Enrolled group.
      * @param startTime When the subject starts.
      * @param classroom Where the classroom takes part.
+     * @param startMinutes Minutes from midnight to the start, used to sort the day.
+     * @param color Color of the subject.
      */
-    public TimetableSubjectModel(String name, String group, String startTime, String classroom) {
+    public TimetableSubjectModel(String name, String group, String startTime, String classroom, int startMinutes, int color) {
         this.name = name;
         this.group = group;
         this.startTime = startTime;
         this.classroom = classroom;
+        this.title = name + " " + group;
+        this.startMinutes = startMinutes;
+        this.color = color;
     }
 
     /**
@@ -53,4 +61,28 @@ public class TimetableSubjectModel {
         return this.classroom;
     }
 
-}
\ No newline at end of file
+    /**
+     * Gets the text shown as the row title, subject name and group.
+     * @return String object that represents the title.
+     */
+    public String getTitle() {
+        return this.title;
+    }
+
+    /**
+     * Gets the minutes from midnight to the start of the class.
+     * @return Integer value with the start minutes.
+     */
+    public int getStartMinutes() {
+        return this.startMinutes;
+    }
+
+    /**
+     * Gets the color of the subject.
+     * @return Integer value with the color.
+     */
+    public int getColor() {
+        return this.color;
+    }
+
+}
@@ -0,0 +1,431 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.upc.fib.racopocket.Models.SubjectModel;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search index over the subject catalogue: the subject initials sorted for prefix lookups, and an
+ * inverted index from the words of subject and teacher names to the subjects they appear in.
+ * Built from llista.json and the subject files, and stored so it is only rebuilt when they change.
+ */
+public class CatalogueIndex {
+
+    public static final String INDEX_FILE = "catalogue-index.bin";
+
+    private static final String LIST_FILE = "llista.json";
+    private static final String[] SOURCE_FILES = {LIST_FILE, CatalogueManifest.MANIFEST_FILE};
+    private static final int MAGIC = 0x52504349;
+    private static final int VERSION = 1;
+
+    private static final int SCORE_EXACT_ID = 1000;
+    private static final int SCORE_ID_PREFIX = 60;
+    private static final int SCORE_TERM = 40;
+    private static final int SCORE_TERM_PREFIX = 25;
+    private static final int SCORE_FUZZY = 15;
+    private static final int FUZZY_MIN_LENGTH = 4;
+    private static final int FUZZY_LONG_LENGTH = 8;
+
+    private SubjectModel[] subjects;
+    private String[] ids;
+    private String[] terms;
+    private int[][] postings;
+    private HashMap<String, SubjectModel> subjectsByCode = new HashMap<>();
+
+    private CatalogueIndex(SubjectModel[] subjects, String[] ids, String[] terms, int[][] postings) {
+        this.subjects = subjects;
+        this.ids = ids;
+        this.terms = terms;
+        this.postings = postings;
+        for (SubjectModel subject : subjects) {
+            this.subjectsByCode.put(subject.getUpcCode(), subject);
+        }
+    }
+
+    /**
+     * Loads the stored index, building and storing it first if the catalogue has changed.
+     * @param context Desired context.
+     * @return CatalogueIndex object, empty if the catalogue has not been fetched yet.
+     */
+    public static CatalogueIndex load(Context context) {
+        long startTime = SystemClock.elapsedRealtime();
+        CatalogueIndex catalogueIndex = read(context);
+        if (catalogueIndex == null) {
+            catalogueIndex = build(new FileUtils(context, null));
+            write(context, catalogueIndex);
+        }
+        Log.d(Constants.TAG_FILE, "Catalogue index loaded in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        return catalogueIndex;
+    }
+
+    /**
+     * Gets the number of indexed subjects.
+     * @return Integer value with the number of subjects.
+     */
+    public int size() {
+        return this.subjects.length;
+    }
+
+    /**
+     * Gets a subject of the catalogue.
+     * @param upcCode Subject UPC code.
+     * @return SubjectModel object, null if it is not in the catalogue.
+     */
+    @Nullable
+    public SubjectModel getSubject(String upcCode) {
+        return this.subjectsByCode.get(upcCode);
+    }
+
+    /**
+     * Searches the subjects matching every word of the query, either in their initials, their name or
+     * the name of their teachers. Words match by prefix, and also with one or two typos once they are
+     * long enough. A query equal to some subject initials always ranks that subject first.
+     * @param query Text written by the user.
+     * @param limit Maximum number of subjects returned.
+     * @return List of subjects, best match first.
+     */
+    public List<SubjectModel> search(String query, int limit) {
+        String foldedQuery = SearchTokenizer.fold(query.trim());
+        List<String> tokens = SearchTokenizer.tokenize(query);
+        if (tokens.isEmpty() && foldedQuery.length() > 0) {
+            tokens = Collections.singletonList(foldedQuery);
+        }
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        int[] scores = null;
+        int[] tokenScores = new int[this.subjects.length];
+        for (String token : tokens) {
+            Arrays.fill(tokenScores, 0);
+            scoreToken(token, tokenScores);
+            if (scores == null) {
+                scores = tokenScores.clone();
+            } else {
+                for (int i = 0; i < scores.length; i++) {
+                    scores[i] = (scores[i] > 0 && tokenScores[i] > 0) ? scores[i] + tokenScores[i] : 0;
+                }
+            }
+        }
+
+        int exact = Arrays.binarySearch(this.ids, foldedQuery);
+        if (exact >= 0) {
+            scores[exact] += SCORE_EXACT_ID;
+        }
+
+        return collect(scores, limit);
+    }
+
+    private void scoreToken(String token, int[] tokenScores) {
+        for (int i = lowerBound(this.ids, token); i < this.ids.length && this.ids[i].startsWith(token); i++) {
+            raise(tokenScores, i, SCORE_ID_PREFIX);
+        }
+
+        for (int i = lowerBound(this.terms, token); i < this.terms.length && this.terms[i].startsWith(token); i++) {
+            int score = this.terms[i].length() == token.length() ? SCORE_TERM : SCORE_TERM_PREFIX;
+            for (int subject : this.postings[i]) {
+                raise(tokenScores, subject, score);
+            }
+        }
+
+        if (token.length() >= FUZZY_MIN_LENGTH) {
+            int maxDistance = token.length() >= FUZZY_LONG_LENGTH ? 2 : 1;
+            for (int i = 0; i < this.terms.length; i++) {
+                int distance = editDistance(token, this.terms[i], maxDistance);
+                if (distance > 0 && distance <= maxDistance) {
+                    for (int subject : this.postings[i]) {
+                        raise(tokenScores, subject, SCORE_FUZZY - 5 * distance);
+                    }
+                }
+            }
+        }
+    }
+
+    private List<SubjectModel> collect(final int[] scores, int limit) {
+        List<Integer> matches = new ArrayList<>();
+        for (int i = 0; i < scores.length; i++) {
+            if (scores[i] > 0) {
+                matches.add(i);
+            }
+        }
+
+        // Subjects are stored sorted by initials, so equal scores keep that order
+        Collections.sort(matches, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                if (scores[lhs] != scores[rhs]) {
+                    return scores[lhs] > scores[rhs] ? -1 : 1;
+                }
+                return lhs.compareTo(rhs);
+            }
+        });
+
+        List<SubjectModel> results = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            results.add(this.subjects[matches.get(i)]);
+        }
+        return results;
+    }
+
+    private static void raise(int[] scores, int position, int score) {
+        if (score > scores[position]) {
+            scores[position] = score;
+        }
+    }
+
+    private static int lowerBound(String[] values, String key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Computes the edit distance between two words, counting swapped adjacent letters as a single edit.
+     * Gives up as soon as the distance is known to be over the maximum.
+     * @param a First word.
+     * @param b Second word.
+     * @param maxDistance Maximum distance of interest.
+     * @return Edit distance, or any value over maxDistance if it is greater.
+     */
+    static int editDistance(String a, String b, int maxDistance) {
+        if (Math.abs(a.length() - b.length()) > maxDistance) {
+            return maxDistance + 1;
+        }
+
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        int[] beforePrevious = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMinimum = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, beforePrevious[j - 2] + 1);
+                }
+                current[j] = distance;
+                rowMinimum = Math.min(rowMinimum, distance);
+            }
+            if (rowMinimum > maxDistance) {
+                return maxDistance + 1;
+            }
+
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+
+        return previous[b.length()];
+    }
+
+    private static CatalogueIndex build(FileUtils fileUtils) {
+        List<SubjectModel> subjects = new ArrayList<>();
+        String subjectsListData = fileUtils.readFileToString(LIST_FILE);
+        if (subjectsListData != null) {
+            try {
+                JSONArray subjectsJSONArray = new JSONArray(subjectsListData);
+                for (int i = 0; i < subjectsJSONArray.length(); i++) {
+                    JSONObject subjectJSONObject = subjectsJSONArray.getJSONObject(i);
+                    subjects.add(new SubjectModel(subjectJSONObject.getString("idAssig"), subjectJSONObject.getString("codi_upc"), subjectJSONObject.optString("nom")));
+                }
+            } catch (JSONException e) {
+                Log.e(Constants.TAG_JSON, "JSON parse failed: " + e.toString());
+            }
+        }
+
+        Collections.sort(subjects, new Comparator<SubjectModel>() {
+            @Override
+            public int compare(SubjectModel lhs, SubjectModel rhs) {
+                return SearchTokenizer.fold(lhs.getId()).compareTo(SearchTokenizer.fold(rhs.getId()));
+            }
+        });
+
+        String[] ids = new String[subjects.size()];
+        Map<String, List<Integer>> termSubjects = new HashMap<>();
+        for (int i = 0; i < subjects.size(); i++) {
+            SubjectModel subject = subjects.get(i);
+            ids[i] = SearchTokenizer.fold(subject.getId());
+            addTerms(termSubjects, subject.getName(), i);
+
+            String subjectFile = CatalogueManifest.getSubjectFile(subject.getUpcCode());
+            if (fileUtils.checkFileExists(subjectFile)) {
+                try {
+                    JSONObject subjectJSONObject = new JSONObject(fileUtils.readFileToString(subjectFile));
+                    if (subject.getName().length() == 0) {
+                        addTerms(termSubjects, subjectJSONObject.optString("nom"), i);
+                    }
+                    JSONArray teachersJSONArray = subjectJSONObject.optJSONArray("professors");
+                    if (teachersJSONArray != null) {
+                        for (int j = 0; j < teachersJSONArray.length(); j++) {
+                            addTerms(termSubjects, teachersJSONArray.getJSONObject(j).optString("nom"), i);
+                        }
+                    }
+                } catch (JSONException e) {
+                    Log.e(Constants.TAG_JSON, "JSON parse failed: " + e.toString());
+                }
+            }
+        }
+
+        String[] terms = termSubjects.keySet().toArray(new String[termSubjects.size()]);
+        Arrays.sort(terms);
+        int[][] postings = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            List<Integer> termPostings = termSubjects.get(terms[i]);
+            postings[i] = new int[termPostings.size()];
+            for (int j = 0; j < postings[i].length; j++) {
+                postings[i][j] = termPostings.get(j);
+            }
+        }
+
+        return new CatalogueIndex(subjects.toArray(new SubjectModel[subjects.size()]), ids, terms, postings);
+    }
+
+    /**
+     * Adds the subject to the postings of every word of the text. Subjects are added in ascending
+     * order, so checking the last one is enough to avoid duplicates.
+     */
+    private static void addTerms(Map<String, List<Integer>> termSubjects, String text, int subject) {
+        for (String term : SearchTokenizer.tokenize(text)) {
+            List<Integer> termPostings = termSubjects.get(term);
+            if (termPostings == null) {
+                termPostings = new ArrayList<>();
+                termSubjects.put(term, termPostings);
+            }
+            if (termPostings.isEmpty() || termPostings.get(termPostings.size() - 1) != subject) {
+                termPostings.add(subject);
+            }
+        }
+    }
+
+    @Nullable
+    private static CatalogueIndex read(Context context) {
+        File file = new File(context.getFilesDir(), INDEX_FILE);
+        byte[] data = new byte[(int) file.length()];
+        try {
+            FileInputStream fileInputStream = new FileInputStream(file);
+            try {
+                new DataInputStream(fileInputStream).readFully(data);
+            } finally {
+                fileInputStream.close();
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Catalogue index read failed: " + e.toString());
+            return null;
+        }
+
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION || input.readInt() != SOURCE_FILES.length) {
+                return null;
+            }
+            for (String sourceFile : SOURCE_FILES) {
+                File source = new File(context.getFilesDir(), sourceFile);
+                if (input.readLong() != source.length() || input.readLong() != source.lastModified()) {
+                    return null;
+                }
+            }
+
+            SubjectModel[] subjects = new SubjectModel[input.readInt()];
+            String[] ids = new String[subjects.length];
+            for (int i = 0; i < subjects.length; i++) {
+                subjects[i] = new SubjectModel(input.readUTF(), input.readUTF(), input.readUTF());
+                ids[i] = SearchTokenizer.fold(subjects[i].getId());
+            }
+
+            String[] terms = new String[input.readInt()];
+            int[][] postings = new int[terms.length][];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = input.readUTF();
+                postings[i] = new int[input.readInt()];
+                for (int j = 0; j < postings[i].length; j++) {
+                    postings[i][j] = input.readInt();
+                }
+            }
+
+            return new CatalogueIndex(subjects, ids, terms, postings);
+        } catch (EOFException e) {
+            Log.e(Constants.TAG_FILE, "Catalogue index truncated: " + e.toString());
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Catalogue index read failed: " + e.toString());
+        }
+
+        return null;
+    }
+
+    private static void write(Context context, CatalogueIndex catalogueIndex) {
+        File file = new File(context.getFilesDir(), INDEX_FILE);
+        try {
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(index);
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(SOURCE_FILES.length);
+            for (String sourceFile : SOURCE_FILES) {
+                File source = new File(context.getFilesDir(), sourceFile);
+                output.writeLong(source.length());
+                output.writeLong(source.lastModified());
+            }
+
+            output.writeInt(catalogueIndex.subjects.length);
+            for (SubjectModel subject : catalogueIndex.subjects) {
+                output.writeUTF(subject.getId());
+                output.writeUTF(subject.getUpcCode());
+                output.writeUTF(subject.getName());
+            }
+
+            output.writeInt(catalogueIndex.terms.length);
+            for (int i = 0; i < catalogueIndex.terms.length; i++) {
+                output.writeUTF(catalogueIndex.terms[i]);
+                output.writeInt(catalogueIndex.postings[i].length);
+                for (int subject : catalogueIndex.postings[i]) {
+                    output.writeInt(subject);
+                }
+            }
+
+            new DurableFile(file).write(index.toByteArray());
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Catalogue index write failed: " + e.toString());
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class CatalogueManifest {
+
+    public static final String MANIFEST_FILE = "subjects-manifest.json";
+    public static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+    public static final String SUBJECT_PREFIX = "subject_";
+
+    private static final String SUBJECT_SUFFIX = ".json";
+
+    private FileUtils fileUtils;
+    private HashMap<String, Entry> entries = new HashMap<>();
+    private HashMap<String, String> listingHashes = new HashMap<>();
+
+    /**
+     * CatalogueManifest constructor, loads the stored manifest if there is any.
+     * @param fileUtils FileUtils object used to read and write the subject files.
+     */
+    public CatalogueManifest(FileUtils fileUtils) {
+        this.fileUtils = fileUtils;
+
+        if (fileUtils.checkFileExists(MANIFEST_FILE)) {
+            try {
+                JSONObject manifestJSONObject = new JSONObject(fileUtils.readFileToString(MANIFEST_FILE));
+                Iterator<String> subjectCodes = manifestJSONObject.keys();
+                while (subjectCodes.hasNext()) {
+                    String subjectCode = subjectCodes.next();
+                    JSONObject entryJSONObject = manifestJSONObject.getJSONObject(subjectCode);
+                    this.entries.put(subjectCode, new Entry(entryJSONObject.getString("listing"), entryJSONObject.getString("hash"), entryJSONObject.getLong("fetched")));
+                }
+            } catch (JSONException e) {
+                Log.e(Constants.TAG_JSON, "JSON parse failed: " + e.toString());
+                this.entries.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the name of the file where a subject information is stored.
+     * @param subjectCode Subject UPC code.
+     * @return String object with the file name.
+     */
+    public static String getSubjectFile(String subjectCode) {
+        return SUBJECT_PREFIX + subjectCode + SUBJECT_SUFFIX;
+    }
+
+    /**
+     * Gets the subject a stored file belongs to.
+     * @param fileName Name of the stored file.
+     * @return String object with the subject UPC code, null if it is not a subject file.
+     */
+    @Nullable
+    public static String getSubjectCode(String fileName) {
+        if (!fileName.startsWith(SUBJECT_PREFIX) || !fileName.endsWith(SUBJECT_SUFFIX) || fileName.length() <= SUBJECT_PREFIX.length() + SUBJECT_SUFFIX.length()) {
+            return null;
+        }
+        return fileName.substring(SUBJECT_PREFIX.length(), fileName.length() - SUBJECT_SUFFIX.length());
+    }
+
+    /**
+     * Reads llista.json, enqueues the subjects whose information is missing or stale and removes the
+     * files of the subjects that are no longer listed.
+     * @param syncEngine SyncEngine where the stale subjects will be enqueued.
+     * @param now Current time in milliseconds.
+     * @return List of the enqueued requests, to be passed to commit once the engine has run.
+     */
+    public List<SyncEngine.Request> enqueueStaleSubjects(SyncEngine syncEngine, long now) {
+        List<SyncEngine.Request> requests = new ArrayList<>();
+        Set<String> listedFiles = new HashSet<>();
+
+        try {
+            JSONArray subjectsJSONArray = new JSONArray(this.fileUtils.readFileToString("llista.json"));
+            for (int i = 0; i < subjectsJSONArray.length(); i++) {
+                JSONObject subjectJSONObject = subjectsJSONArray.getJSONObject(i);
+                String subjectCode = subjectJSONObject.getString("codi_upc");
+                String listingHash = FileUtils.hashString(subjectJSONObject.toString());
+                String fileName = getSubjectFile(subjectCode);
+
+                listedFiles.add(fileName);
+                this.listingHashes.put(subjectCode, listingHash);
+                if (isStale(subjectCode, listingHash, now)) {
+                    requests.add(syncEngine.enqueue("https://raco.fib.upc.edu/api/assignatures/info.json?codi_upc=" + subjectCode, fileName, true));
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(Constants.TAG_JSON, "JSON parse failed: " + e.toString());
+            return requests;
+        }
+
+        for (String fileName : this.fileUtils.listFiles(SUBJECT_PREFIX)) {
+            if (fileName.endsWith(SUBJECT_SUFFIX) && !listedFiles.contains(fileName)) {
+                this.fileUtils.deleteFile(fileName);
+            }
+        }
+        Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (!this.listingHashes.containsKey(iterator.next().getKey())) {
+                iterator.remove();
+            }
+        }
+
+        return requests;
+    }
+
+    /**
+     * Records the result of the enqueued requests and stores the manifest. Failed subjects are removed.
+     * @param requests Requests returned by enqueueStaleSubjects, already run.
+     * @param now Current time in milliseconds.
+     * @return Set of subject codes whose stored information has changed.
+     */
+    public Set<String> commit(List<SyncEngine.Request> requests, long now) {
+        Set<String> changedSubjects = new HashSet<>();
+
+        for (SyncEngine.Request request : requests) {
+            String fileName = request.getOutputFile();
+            String subjectCode = getSubjectCode(fileName);
+            Entry entry = this.entries.get(subjectCode);
+
+            if (request.isFailed()) {
+                this.fileUtils.deleteFile(fileName);
+                this.entries.remove(subjectCode);
+                changedSubjects.add(subjectCode);
+            } else if (FileUtils.isSuccessful(request.getStatusCode())) {
+                String contentHash = (request.getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) ? entry.contentHash : this.fileUtils.hashFile(fileName);
+                if (contentHash == null) {
+                    continue;
+                }
+                if (entry == null || !contentHash.equals(entry.contentHash)) {
+                    changedSubjects.add(subjectCode);
+                }
+                this.entries.put(subjectCode, new Entry(this.listingHashes.get(subjectCode), contentHash, now));
+            }
+        }
+
+        save();
+        return changedSubjects;
+    }
+
+    private boolean isStale(String subjectCode, String listingHash, long now) {
+        Entry entry = this.entries.get(subjectCode);
+        return entry == null
+                || !this.fileUtils.checkFileExists(getSubjectFile(subjectCode))
+                || !listingHash.equals(entry.listingHash)
+                || now - entry.fetched > MAX_AGE;
+    }
+
+    private void save() {
+        try {
+            JSONObject manifestJSONObject = new JSONObject();
+            for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+                JSONObject entryJSONObject = new JSONObject();
+                entryJSONObject.put("listing", entry.getValue().listingHash);
+                entryJSONObject.put("hash", entry.getValue().contentHash);
+                entryJSONObject.put("fetched", entry.getValue().fetched);
+                manifestJSONObject.put(entry.getKey(), entryJSONObject);
+            }
+            this.fileUtils.writeStringToFile(MANIFEST_FILE, manifestJSONObject.toString());
+        } catch (JSONException e) {
+            Log.e(Constants.TAG_JSON, "JSON write failed: " + e.toString());
+        }
+    }
+
+    private static class Entry {
+
+        private String listingHash;
+        private String contentHash;
+        private long fetched;
+
+        Entry(String listingHash, String contentHash, long fetched) {
+            this.listingHash = listingHash;
+            this.contentHash = contentHash;
+            this.fetched = fetched;
+        }
+
+    }
+
+}
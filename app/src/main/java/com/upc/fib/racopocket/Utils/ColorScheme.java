@@ -2,13 +2,11 @@ package com.upc.fib.racopocket.Utils;
 
 import android.content.Context;
 import android.graphics.Color;
-import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.upc.fib.racopocket.Models.SubjectModel;
 
 import java.util.HashMap;
+import java.util.List;
 
 public class ColorScheme {
 
@@ -36,20 +34,13 @@ public class ColorScheme {
 
     /**
      * Returns a Hash map with subject as key and color as value for each assigned subject.
+     * @param subjects Subjects the student is enrolled in, colors are assigned in this order.
      * @return HashMap containing all subject-color necessary entries.
      */
-    public HashMap<String, Integer> setColorsToSubjects() {
+    public HashMap<String, Integer> setColorsToSubjects(List<SubjectModel> subjects) {
         HashMap<String, Integer> colorScheme = new HashMap<>();
-        FileUtils fileUtils = new FileUtils(this.context, null);
-        String mySubjects = fileUtils.readFileToString("assignatures.json");
-        try {
-            JSONArray mySubjectsJSONArray = new JSONArray(mySubjects);
-            for (int i = 0; i < mySubjectsJSONArray.length(); i++) {
-                JSONObject mySubjectJSONObject = mySubjectsJSONArray.getJSONObject(i);
-                colorScheme.put(mySubjectJSONObject.getString("idAssig"), colors[i % colors.length]);
-            }
-        } catch (JSONException e) {
-            Log.e(Constants.TAG_JSON, "JSON parse failed: " + e.toString());
+        for (int i = 0; i < subjects.size(); i++) {
+            colorScheme.put(subjects.get(i).getId(), colors[i % colors.length]);
         }
 
         return colorScheme;
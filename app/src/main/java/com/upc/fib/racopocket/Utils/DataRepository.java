@@ -0,0 +1,277 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.upc.fib.racopocket.Models.ClassroomModel;
+import com.upc.fib.racopocket.Models.StudentModel;
+import com.upc.fib.racopocket.Models.SubjectModel;
+import com.upc.fib.racopocket.Models.TimetableSubjectModel;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DataRepository implements FileUtils.OnFileChangedListener {
+
+    private static DataRepository instance;
+
+    private Context context;
+    private FileUtils fileUtils;
+    private ColorScheme colorScheme;
+    private WeekTimetable weekTimetable;
+
+    private StudentModel studentInfo;
+    private List<SubjectModel> subjects;
+    private Map<String, Integer> subjectColors;
+    private List<List<TimetableSubjectModel>> timetable;
+    private List<ClassroomModel> classrooms;
+    private NotificationInbox notificationInbox;
+    private CatalogueIndex catalogueIndex;
+    private int catalogueGeneration;
+    private SubjectTextIndex subjectTextIndex;
+    private OccupancyHistory occupancyHistory;
+    private boolean snapshotChecked;
+
+    private DataRepository(Context context) {
+        this.context = context;
+        this.fileUtils = new FileUtils(context, null);
+        this.colorScheme = new ColorScheme(context);
+        this.weekTimetable = new WeekTimetable(this.fileUtils);
+    }
+
+    /**
+     * Gets the application wide repository, creating it the first time.
+     * @param context Any context, the application one is kept.
+     * @return DataRepository shared instance.
+     */
+    public static synchronized DataRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new DataRepository(context.getApplicationContext());
+            FileUtils.addOnFileChangedListener(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the logged student information, parsed from info-personal.json.
+     * @return StudentModel object, null if the file is missing or malformed.
+     */
+    @Nullable
+    public synchronized StudentModel getStudentInfo() {
+        loadSnapshot();
+        if (this.studentInfo == null) {
+            String studentData = this.fileUtils.readFileToString("info-personal.json");
+            if (studentData != null) {
+                try {
+                    JSONObject studentJSONObject = new JSONObject(studentData);
+                    this.studentInfo = new StudentModel(studentJSONObject.getString("nom"), studentJSONObject.getString("cognoms"));
+                } catch (JSONException e) {
+                    Log.e(Constants.TAG_JSON, "JSON parse failed: " + e.toString());
+                }
+            }
+        }
+        return this.studentInfo;
+    }
+
+    /**
+     * Gets the subjects the student is enrolled in, parsed from assignatures.json.
+     * @return Unmodifiable list of subjects, empty if the file is missing or malformed.
+     */
+    public synchronized List<SubjectModel> getSubjects() {
+        loadSnapshot();
+        if (this.subjects == null) {
+            List<SubjectModel> subjects = new ArrayList<>();
+            String subjectsData = this.fileUtils.readFileToString("assignatures.json");
+            if (subjectsData != null) {
+                try {
+                    JSONArray subjectsJSONArray = new JSONArray(subjectsData);
+                    for (int i = 0; i < subjectsJSONArray.length(); i++) {
+                        JSONObject subjectJSONObject = subjectsJSONArray.getJSONObject(i);
+                        subjects.add(new SubjectModel(subjectJSONObject.getString("idAssig"), subjectJSONObject.getString("codi_upc"), subjectJSONObject.optString("nom")));
+                    }
+                } catch (JSONException e) {
+                    Log.e(Constants.TAG_JSON, "JSON parse failed: " + e.toString());
+                }
+            }
+            this.subjects = Collections.unmodifiableList(subjects);
+        }
+        return this.subjects;
+    }
+
+    /**
+     * Gets the color assigned to each enrolled subject.
+     * @return Unmodifiable map with subject initials as key and color as value.
+     */
+    public synchronized Map<String, Integer> getColorScheme() {
+        if (this.subjectColors == null) {
+            this.subjectColors = Collections.unmodifiableMap(this.colorScheme.setColorsToSubjects(getSubjects()));
+        }
+        return this.subjectColors;
+    }
+
+    /**
+     * Gets the weekly timetable, compiled from horari-setmanal.json into ready to display rows.
+     * @return Unmodifiable list with the classes of each day, from monday to friday, sorted by start time.
+     */
+    public synchronized List<List<TimetableSubjectModel>> getTimetable() {
+        loadSnapshot();
+        if (this.timetable == null) {
+            this.timetable = this.weekTimetable.compile(getColorScheme());
+        }
+        return this.timetable;
+    }
+
+    /**
+     * Gets the free places of each classroom, parsed from places-lliures.json.
+     * @return Unmodifiable list of classrooms, null if the file is missing or malformed.
+     */
+    @Nullable
+    public synchronized List<ClassroomModel> getClassrooms() {
+        if (this.classrooms == null) {
+            String classroomsData = this.fileUtils.readFileToString("places-lliures.json");
+            if (classroomsData != null) {
+                try {
+                    List<ClassroomModel> classrooms = new ArrayList<>();
+                    JSONArray classroomsJSONArray = new JSONObject(classroomsData).getJSONArray("aules");
+                    for (int i = 0; i < classroomsJSONArray.length(); i++) {
+                        JSONObject classroomJSONObject = classroomsJSONArray.getJSONObject(i);
+                        classrooms.add(new ClassroomModel(classroomJSONObject.getString("nom"), classroomJSONObject.getInt("places")));
+                    }
+                    this.classrooms = Collections.unmodifiableList(classrooms);
+                } catch (JSONException e) {
+                    Log.e(Constants.TAG_JSON, "JSON parse failed: " + e.toString());
+                }
+            }
+        }
+        return this.classrooms;
+    }
+
+    /**
+     * Gets the inbox holding the notifications of every subject, loaded from its file the first time.
+     * @return NotificationInbox shared instance.
+     */
+    public synchronized NotificationInbox getNotificationInbox() {
+        if (this.notificationInbox == null) {
+            this.notificationInbox = new NotificationInbox(this.fileUtils);
+        }
+        return this.notificationInbox;
+    }
+
+    /**
+     * Gets the search index over the subject catalogue, loaded from its file or built the first time.
+     * Building it reads every subject file, so it should not be called from the UI thread. It is built
+     * without holding the repository lock, and only kept if the catalogue has not changed meanwhile.
+     * @return CatalogueIndex shared instance.
+     */
+    public CatalogueIndex getCatalogueIndex() {
+        int generation;
+        synchronized (this) {
+            if (this.catalogueIndex != null) {
+                return this.catalogueIndex;
+            }
+            generation = this.catalogueGeneration;
+        }
+
+        CatalogueIndex catalogueIndex = CatalogueIndex.load(this.context);
+        synchronized (this) {
+            if (generation == this.catalogueGeneration) {
+                this.catalogueIndex = catalogueIndex;
+            }
+        }
+        return catalogueIndex;
+    }
+
+    /**
+     * Gets the full-text index over the subject files. It is loaded and brought up to date on first use.
+     * @return SubjectTextIndex shared instance.
+     */
+    public synchronized SubjectTextIndex getSubjectTextIndex() {
+        if (this.subjectTextIndex == null) {
+            this.subjectTextIndex = new SubjectTextIndex(this.context);
+        }
+        return this.subjectTextIndex;
+    }
+
+    /**
+     * Gets the history of free places of each classroom, loaded from its file on first use.
+     * @return OccupancyHistory shared instance.
+     */
+    public synchronized OccupancyHistory getOccupancyHistory() {
+        if (this.occupancyHistory == null) {
+            this.occupancyHistory = new OccupancyHistory(this.context);
+        }
+        return this.occupancyHistory;
+    }
+
+    /**
+     * Writes the snapshot read at launch with the current data. Called after each successful sync.
+     */
+    public synchronized void saveSnapshot() {
+        StudentModel studentInfo = getStudentInfo();
+        if (studentInfo != null) {
+            DataSnapshot.write(this.context, studentInfo, getSubjects(), getTimetable());
+        }
+    }
+
+    /**
+     * Fills the models from the snapshot the first time any of them is requested, skipping JSON parsing.
+     * The snapshot is discarded if any of its source files has changed since it was written.
+     */
+    private void loadSnapshot() {
+        if (this.snapshotChecked) {
+            return;
+        }
+        this.snapshotChecked = true;
+
+        DataSnapshot snapshot = DataSnapshot.read(this.context);
+        if (snapshot != null) {
+            this.studentInfo = snapshot.getStudentInfo();
+            this.subjects = snapshot.getSubjects();
+            this.timetable = snapshot.getTimetable();
+        }
+    }
+
+    /**
+     * Drops the cached models backed by the changed file, they will be parsed again on next access.
+     * @param fileName Name of the changed file.
+     */
+    @Override
+    public synchronized void onFileChanged(String fileName) {
+        switch (fileName) {
+            case "info-personal.json":
+                this.studentInfo = null;
+                break;
+            case "assignatures.json":
+                this.subjects = null;
+                this.subjectColors = null;
+                this.timetable = null;
+                break;
+            case WeekTimetable.SOURCE_FILE:
+                this.timetable = null;
+                break;
+            case "places-lliures.json":
+                this.classrooms = null;
+                break;
+            case NotificationInbox.INBOX_FILE:
+                // The inbox saves itself through this file, only its removal at logout invalidates it
+                if (!this.fileUtils.checkFileExists(NotificationInbox.INBOX_FILE)) {
+                    this.notificationInbox = null;
+                }
+                break;
+            case "llista.json":
+            case CatalogueManifest.MANIFEST_FILE:
+                this.catalogueIndex = null;
+                this.catalogueGeneration++;
+                break;
+        }
+    }
+
+}
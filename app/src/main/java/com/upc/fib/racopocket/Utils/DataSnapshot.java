@@ -0,0 +1,198 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.upc.fib.racopocket.Models.StudentModel;
+import com.upc.fib.racopocket.Models.SubjectModel;
+import com.upc.fib.racopocket.Models.TimetableSubjectModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Binary snapshot of the parsed RACO data, written after each sync and read in a single bulk read
+ * at launch so no JSON has to be parsed. Layout: header with the size and modification time of
+ * the source files, then records of type, length and payload. Unknown records are skipped.
+ */
+public class DataSnapshot {
+
+    public static final String SNAPSHOT_FILE = "snapshot.bin";
+
+    private static final int MAGIC = 0x52505353;
+    private static final int VERSION = 1;
+    private static final String[] SOURCE_FILES = {"info-personal.json", "assignatures.json", "horari-setmanal.json"};
+
+    private static final int RECORD_STUDENT = 1;
+    private static final int RECORD_SUBJECTS = 2;
+    private static final int RECORD_TIMETABLE = 3;
+
+    private StudentModel studentInfo;
+    private List<SubjectModel> subjects;
+    private List<List<TimetableSubjectModel>> timetable;
+
+    private DataSnapshot() {
+    }
+
+    /**
+     * Gets the stored student information.
+     * @return StudentModel object, null if the snapshot does not hold it.
+     */
+    @Nullable
+    public StudentModel getStudentInfo() {
+        return this.studentInfo;
+    }
+
+    /**
+     * Gets the stored subjects.
+     * @return Unmodifiable list of subjects, null if the snapshot does not hold them.
+     */
+    @Nullable
+    public List<SubjectModel> getSubjects() {
+        return this.subjects;
+    }
+
+    /**
+     * Gets the stored weekly timetable.
+     * @return Unmodifiable list with the classes of each day, null if the snapshot does not hold it.
+     */
+    @Nullable
+    public List<List<TimetableSubjectModel>> getTimetable() {
+        return this.timetable;
+    }
+
+    /**
+     * Reads the stored snapshot if it was written from the current source files.
+     * @param context Desired context.
+     * @return DataSnapshot object, null if there is none or it is outdated.
+     */
+    @Nullable
+    public static DataSnapshot read(Context context) {
+        long startTime = SystemClock.elapsedRealtime();
+        File file = new File(context.getFilesDir(), SNAPSHOT_FILE);
+        byte[] data = new byte[(int) file.length()];
+        try {
+            FileInputStream fileInputStream = new FileInputStream(file);
+            try {
+                new DataInputStream(fileInputStream).readFully(data);
+            } finally {
+                fileInputStream.close();
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Snapshot read failed: " + e.toString());
+            return null;
+        }
+
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION || input.readInt() != SOURCE_FILES.length) {
+                return null;
+            }
+            for (String sourceFile : SOURCE_FILES) {
+                File source = new File(context.getFilesDir(), sourceFile);
+                if (input.readLong() != source.length() || input.readLong() != source.lastModified()) {
+                    return null;
+                }
+            }
+
+            DataSnapshot snapshot = new DataSnapshot();
+            while (input.available() > 0) {
+                int type = input.readInt();
+                byte[] payload = new byte[input.readInt()];
+                input.readFully(payload);
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                switch (type) {
+                    case RECORD_STUDENT:
+                        snapshot.studentInfo = new StudentModel(record.readUTF(), record.readUTF());
+                        break;
+                    case RECORD_SUBJECTS:
+                        int count = record.readInt();
+                        List<SubjectModel> subjects = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            subjects.add(new SubjectModel(record.readUTF(), record.readUTF(), record.readUTF()));
+                        }
+                        snapshot.subjects = Collections.unmodifiableList(subjects);
+                        break;
+                    case RECORD_TIMETABLE:
+                        snapshot.timetable = WeekTimetable.readWeek(record);
+                        break;
+                }
+            }
+
+            Log.d(Constants.TAG_FILE, "Snapshot read in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+            return snapshot;
+        } catch (EOFException e) {
+            Log.e(Constants.TAG_FILE, "Snapshot truncated: " + e.toString());
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Snapshot read failed: " + e.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes a new snapshot, stamped with the current source files.
+     * @param context Desired context.
+     * @param studentInfo Parsed student information.
+     * @param subjects Parsed subjects.
+     * @param timetable Compiled weekly timetable.
+     */
+    public static void write(Context context, StudentModel studentInfo, List<SubjectModel> subjects, List<List<TimetableSubjectModel>> timetable) {
+        File file = new File(context.getFilesDir(), SNAPSHOT_FILE);
+        try {
+            ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(snapshot);
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(SOURCE_FILES.length);
+            for (String sourceFile : SOURCE_FILES) {
+                File source = new File(context.getFilesDir(), sourceFile);
+                output.writeLong(source.length());
+                output.writeLong(source.lastModified());
+            }
+
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(payload);
+            record.writeUTF(studentInfo.getName());
+            record.writeUTF(studentInfo.getSurname());
+            writeRecord(output, RECORD_STUDENT, payload);
+
+            record.writeInt(subjects.size());
+            for (SubjectModel subject : subjects) {
+                record.writeUTF(subject.getId());
+                record.writeUTF(subject.getUpcCode());
+                record.writeUTF(subject.getName());
+            }
+            writeRecord(output, RECORD_SUBJECTS, payload);
+
+            WeekTimetable.writeWeek(record, timetable);
+            writeRecord(output, RECORD_TIMETABLE, payload);
+
+            new DurableFile(file).write(snapshot.toByteArray());
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Snapshot write failed: " + e.toString());
+        }
+    }
+
+    private static void writeRecord(DataOutputStream output, int type, ByteArrayOutputStream payload) throws IOException {
+        output.writeInt(type);
+        output.writeInt(payload.size());
+        payload.writeTo(output);
+        payload.reset();
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+/**
+ * Draws a one dp line below each row, as ListView dividers did.
+ */
+public class DividerDecoration extends RecyclerView.ItemDecoration {
+
+    private Paint paint = new Paint();
+    private int height;
+
+    /**
+     * DividerDecoration constructor.
+     * @param context Desired context.
+     * @param color Color of the divider.
+     */
+    public DividerDecoration(Context context, int color) {
+        this.paint.setColor(color);
+        this.height = Math.max(1, Math.round(context.getResources().getDisplayMetrics().density));
+    }
+
+    @Override
+    public void getItemOffsets(Rect outRect, View view, RecyclerView parent, RecyclerView.State state) {
+        outRect.set(0, 0, 0, this.height);
+    }
+
+    @Override
+    public void onDraw(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
+        int left = parent.getPaddingLeft();
+        int right = parent.getWidth() - parent.getPaddingRight();
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            int top = parent.getChildAt(i).getBottom();
+            canvas.drawRect(left, top, right, top + this.height, this.paint);
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+package com.upc.fib.racopocket.Utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stored file replaced as a whole: new content is written to a temporary file next to it, synced
+ * to disk and renamed over the old one, so a failed or interrupted write leaves the previous content
+ * intact and readers never see a partial file. Each file also has a process wide read/write lock,
+ * held by writers only while the new content is swapped in, so readers can keep several reads of
+ * the same file (or the file and its validators) consistent. Temporary files left behind by a killed
+ * process are removed by deleteStaleTemporaryFiles.
+ */
+public class DurableFile {
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final ConcurrentHashMap<String, ReentrantReadWriteLock> LOCKS = new ConcurrentHashMap<>();
+    // Temporary files being written by this process, guarded by itself
+    private static final Set<String> PENDING = new HashSet<>();
+
+    private File file;
+    private ReentrantReadWriteLock lock;
+
+    /**
+     * DurableFile constructor.
+     * @param file Final location of the file.
+     */
+    public DurableFile(File file) {
+        this.file = file;
+        this.lock = getLock(file.getAbsolutePath());
+    }
+
+    private static ReentrantReadWriteLock getLock(String path) {
+        ReentrantReadWriteLock lock = LOCKS.get(path);
+        if (lock == null) {
+            ReentrantReadWriteLock created = new ReentrantReadWriteLock();
+            lock = LOCKS.putIfAbsent(path, created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Gets the final location of the file.
+     * @return File object.
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Gets the lock readers hold while reading the file.
+     * @return Lock shared by every reader of the file.
+     */
+    public Lock readLock() {
+        return this.lock.readLock();
+    }
+
+    /**
+     * Gets the lock held while the file is replaced or deleted. It is reentrant, so a caller may hold it
+     * around finishWrite to update related files at the same time.
+     * @return Lock exclusive to a single writer.
+     */
+    public Lock writeLock() {
+        return this.lock.writeLock();
+    }
+
+    /**
+     * Starts writing new content. Concurrent writers get their own temporary file, the last one to
+     * finish wins.
+     * @return Stream to write the new content into, to be passed to finishWrite or failWrite.
+     * @throws IOException If the temporary file cannot be created.
+     */
+    public Output startWrite() throws IOException {
+        synchronized (PENDING) {
+            File temporary = File.createTempFile(this.file.getName() + ".", TEMPORARY_SUFFIX, this.file.getParentFile());
+            Output output;
+            try {
+                output = new Output(temporary);
+            } catch (IOException e) {
+                temporary.delete();
+                throw e;
+            }
+            PENDING.add(temporary.getAbsolutePath());
+            return output;
+        }
+    }
+
+    /**
+     * Deletes the temporary files of a directory that are not being written by this process, left by
+     * writes interrupted when the process was killed.
+     * @param directory Directory holding the files.
+     * @return Integer value with the number of deleted files.
+     */
+    public static int deleteStaleTemporaryFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+
+        int deleted = 0;
+        synchronized (PENDING) {
+            for (File file : files) {
+                if (file.getName().endsWith(TEMPORARY_SUFFIX) && !PENDING.contains(file.getAbsolutePath()) && file.delete()) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private static void release(Output output) {
+        synchronized (PENDING) {
+            PENDING.remove(output.temporary.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Syncs the new content to disk without holding the lock. Called by finishWrite if it has not
+     * been called before, so callers holding the lock around finishWrite can sync first.
+     * @param output Stream returned by startWrite, closed by this method.
+     * @throws IOException If the content cannot be synced, the new content is discarded.
+     */
+    public void syncWrite(Output output) throws IOException {
+        if (output.synced) {
+            return;
+        }
+        try {
+            output.flush();
+            output.getFD().sync();
+            output.close();
+        } catch (IOException e) {
+            failWrite(output);
+            throw e;
+        }
+        output.synced = true;
+    }
+
+    /**
+     * Syncs the new content to disk and replaces the file with it.
+     * @param output Stream returned by startWrite, closed by this method.
+     * @throws IOException If the content cannot be synced or the file cannot be replaced, the previous content is kept.
+     */
+    public void finishWrite(Output output) throws IOException {
+        syncWrite(output);
+
+        this.lock.writeLock().lock();
+        try {
+            if (!output.temporary.renameTo(this.file)) {
+                output.temporary.delete();
+                throw new IOException("Rename failed: " + this.file.getName());
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+            release(output);
+        }
+    }
+
+    /**
+     * Discards the new content, keeping the previous one. Nothing is done if it was already discarded.
+     * @param output Stream returned by startWrite, closed by this method.
+     */
+    public void failWrite(Output output) {
+        try {
+            output.close();
+        } catch (IOException e) {
+            // Nothing else to do, the temporary file is removed anyway
+        }
+        output.temporary.delete();
+        release(output);
+    }
+
+    /**
+     * Replaces the file with the given content.
+     * @param data New content.
+     * @throws IOException If the content cannot be written, the previous content is kept.
+     */
+    public void write(byte[] data) throws IOException {
+        Output output = startWrite();
+        try {
+            output.write(data);
+        } catch (IOException e) {
+            failWrite(output);
+            throw e;
+        }
+        finishWrite(output);
+    }
+
+    /**
+     * Deletes the file.
+     * @return Boolean value representing if the file has been deleted.
+     */
+    public boolean delete() {
+        this.lock.writeLock().lock();
+        try {
+            return this.file.delete();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public static class Output extends FileOutputStream {
+
+        private File temporary;
+        private boolean synced;
+
+        Output(File temporary) throws IOException {
+            super(temporary);
+            this.temporary = temporary;
+        }
+
+    }
+
+}
@@ -0,0 +1,247 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.upc.fib.racopocket.Models.EventModel;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Date sorted binary index of the upcoming events of an ICS file, rebuilt only when the file
+ * changes or the requested window goes past the indexed interval.
+ * Layout: header, subject table, fixed size records (start, summary offset, subject) and the
+ * summaries, stored in the same order as the records.
+ */
+public class EventIndex {
+
+    private static final String SUFFIX = ".idx";
+    private static final int MAGIC = 0x52504549;
+    private static final int VERSION = 3;
+    private static final int RECORD_SIZE = 16;
+
+    private Context context;
+    private FileUtils fileUtils;
+
+    /**
+     * EventIndex constructor.
+     * @param context Desired context.
+     */
+    public EventIndex(Context context) {
+        this.context = context;
+        this.fileUtils = new FileUtils(context, null);
+    }
+
+    /**
+     * Gets the events starting within the given window, building the index first if needed.
+     * The index covers twice the window, so it is rebuilt at most once per window if the calendar does not change.
+     * @param inputFile Name of the ICS file.
+     * @param subjectColors Color of each subject events are assigned to.
+     * @param defaultColor Color of the events that do not belong to any subject.
+     * @param now Current time in milliseconds.
+     * @param window Length of the window in milliseconds, starting now.
+     * @return List of events sorted by start time, null if the calendar could not be read.
+     */
+    @Nullable
+    public List<EventModel> getUpcomingEvents(String inputFile, Map<String, Integer> subjectColors, int defaultColor, long now, long window) {
+        List<String> subjectIds = new ArrayList<>(subjectColors.keySet());
+        Collections.sort(subjectIds);
+        int[] colors = new int[subjectIds.size()];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = subjectColors.get(subjectIds.get(i));
+        }
+
+        File source = new File(this.context.getFilesDir(), inputFile);
+        if (!source.exists()) {
+            return null;
+        }
+
+        File index = new File(this.context.getFilesDir(), inputFile + SUFFIX);
+        List<EventModel> events = readUpcomingEvents(source, index, subjectIds, colors, defaultColor, now, window);
+        if (events == null && build(inputFile, source, index, subjectIds, now, now + 2 * window)) {
+            events = readUpcomingEvents(source, index, subjectIds, colors, defaultColor, now, window);
+        }
+        return events;
+    }
+
+    /**
+     * Reads the upcoming events from the index, binary searching the first and last ones.
+     * @return List of events, null if the index is missing or does not cover the calendar and window.
+     */
+    @Nullable
+    private List<EventModel> readUpcomingEvents(File source, File index, List<String> subjectIds, int[] colors, int defaultColor, long now, long window) {
+        if (!index.exists()) {
+            return null;
+        }
+
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(index, "r");
+            try {
+                if (randomAccessFile.readInt() != MAGIC || randomAccessFile.readInt() != VERSION
+                        || randomAccessFile.readLong() != source.length() || randomAccessFile.readLong() != source.lastModified()
+                        || randomAccessFile.readInt() != subjectIds.hashCode()) {
+                    return null;
+                }
+                long indexedFrom = randomAccessFile.readLong();
+                long indexedTo = randomAccessFile.readLong();
+                if (now < indexedFrom || now + window > indexedTo) {
+                    return null;
+                }
+
+                String[] subjects = new String[randomAccessFile.readInt()];
+                for (int i = 0; i < subjects.length; i++) {
+                    subjects[i] = randomAccessFile.readUTF();
+                }
+                int count = randomAccessFile.readInt();
+                long recordsStart = randomAccessFile.getFilePointer();
+                long summariesStart = recordsStart + (long) count * RECORD_SIZE;
+
+                int first = findFirstAfter(randomAccessFile, recordsStart, count, now);
+                int last = findFirstAfter(randomAccessFile, recordsStart, count, now + window);
+
+                List<EventModel> events = new ArrayList<>(last - first);
+                if (first == last) {
+                    return events;
+                }
+
+                // Summaries follow the records order, so the ones in the window are contiguous
+                long firstSummary = summariesStart + readSummaryOffset(randomAccessFile, recordsStart, first);
+                long lastSummary = last == count ? randomAccessFile.length() : summariesStart + readSummaryOffset(randomAccessFile, recordsStart, last);
+                byte[] records = new byte[(last - first) * RECORD_SIZE];
+                randomAccessFile.seek(recordsStart + (long) first * RECORD_SIZE);
+                randomAccessFile.readFully(records);
+                DataInputStream recordsInput = new DataInputStream(new ByteArrayInputStream(records));
+
+                byte[] summaries = new byte[(int) (lastSummary - firstSummary)];
+                randomAccessFile.seek(firstSummary);
+                randomAccessFile.readFully(summaries);
+                DataInputStream summariesInput = new DataInputStream(new ByteArrayInputStream(summaries));
+
+                for (int i = first; i < last; i++) {
+                    long start = recordsInput.readLong();
+                    recordsInput.readInt();
+                    int subject = recordsInput.readInt();
+                    events.add(new EventModel(summariesInput.readUTF(), start, subject < 0 ? null : subjects[subject], subject < 0 ? defaultColor : colors[subject]));
+                }
+                return events;
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Event index read failed: " + e.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Scans the calendar once and stores the events within the interval sorted by start time.
+     * @return Boolean value representing if the index has been written.
+     */
+    private boolean build(String inputFile, File source, File index, List<String> subjectIds, long from, long to) {
+        // Taken before the scan, a calendar replaced meanwhile leaves the index stale instead of stamped as current
+        long sourceLength, sourceModified;
+        DurableFile sourceFile = new DurableFile(source);
+        sourceFile.readLock().lock();
+        try {
+            sourceLength = source.length();
+            sourceModified = source.lastModified();
+        } finally {
+            sourceFile.readLock().unlock();
+        }
+
+        List<EventModel> scannedEvents = this.fileUtils.readFileToEvents(inputFile, from, to);
+        if (scannedEvents == null) {
+            return false;
+        }
+
+        SubjectMatcher subjectMatcher = new SubjectMatcher(subjectIds);
+        List<EventModel> events = new ArrayList<>(scannedEvents.size());
+        for (EventModel event : scannedEvents) {
+            events.add(new EventModel(event.getSummary(), event.getStart(), subjectMatcher.findSubject(event.getSummary()), 0));
+        }
+
+        Collections.sort(events, new Comparator<EventModel>() {
+            @Override
+            public int compare(EventModel lhs, EventModel rhs) {
+                return lhs.getStart() < rhs.getStart() ? -1 : (lhs.getStart() == rhs.getStart() ? 0 : 1);
+            }
+        });
+
+        DurableFile durableFile = new DurableFile(index);
+        DurableFile.Output fileOutput = null;
+        try {
+            fileOutput = durableFile.startWrite();
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(sourceLength);
+            output.writeLong(sourceModified);
+            output.writeInt(subjectIds.hashCode());
+            output.writeLong(from);
+            output.writeLong(to);
+            output.writeInt(subjectIds.size());
+            for (String subjectId : subjectIds) {
+                output.writeUTF(subjectId);
+            }
+            output.writeInt(events.size());
+
+            ByteArrayOutputStream summaries = new ByteArrayOutputStream();
+            DataOutputStream summariesOutput = new DataOutputStream(summaries);
+            for (EventModel event : events) {
+                output.writeLong(event.getStart());
+                output.writeInt(summariesOutput.size());
+                output.writeInt(event.getSubjectId() == null ? -1 : subjectIds.indexOf(event.getSubjectId()));
+                summariesOutput.writeUTF(event.getSummary());
+            }
+            summaries.writeTo(output);
+            output.flush();
+            durableFile.finishWrite(fileOutput);
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Event index write failed: " + e.toString());
+            if (fileOutput != null) {
+                durableFile.failWrite(fileOutput);
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Binary searches the first record starting after the given time.
+     * @return Index of the record, count if there is none.
+     */
+    private static int findFirstAfter(RandomAccessFile randomAccessFile, long recordsStart, int count, long time) throws IOException {
+        int low = 0, high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            randomAccessFile.seek(recordsStart + (long) middle * RECORD_SIZE);
+            if (randomAccessFile.readLong() > time) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private static int readSummaryOffset(RandomAccessFile randomAccessFile, long recordsStart, int record) throws IOException {
+        randomAccessFile.seek(recordsStart + (long) record * RECORD_SIZE + 8);
+        return randomAccessFile.readInt();
+    }
+
+}
@@ -3,39 +3,57 @@ package com.upc.fib.racopocket.Utils;
 import android.content.Context;
 import android.support.annotation.Nullable;
 import android.util.Log;
+import android.util.Xml;
 
+import com.upc.fib.racopocket.Models.EventModel;
 import com.upc.fib.racopocket.Models.NotificationModel;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import biweekly.io.text.ICalReader;
 import oauth.signpost.OAuthConsumer;
 
 public class FileUtils {
 
+    private static final int BUFFER_SIZE = 8192;
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+    private static final List<OnFileChangedListener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final ConcurrentHashMap<String, FutureTask<Integer>> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static volatile HttpTransport transport = new UrlConnectionTransport();
+
     private Context context;
     private OAuthConsumer consumer;
+    private ValidatorStore validatorStore;
 
     /**
      * FileUtils constructor;
@@ -45,6 +63,38 @@ public class FileUtils {
     public FileUtils(Context context, OAuthConsumer consumer) {
         this.context = context;
         this.consumer = consumer;
+        this.validatorStore = new ValidatorStore(context);
+    }
+
+    /**
+     * Registers a listener to be notified each time a stored file is rewritten or deleted.
+     * @param listener Listener to be added.
+     */
+    public static void addOnFileChangedListener(OnFileChangedListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Replaces the transport used to fetch every file.
+     * @param httpTransport Transport to be used from now on.
+     */
+    public static void setHttpTransport(HttpTransport httpTransport) {
+        transport = httpTransport;
+    }
+
+    private static void notifyFileChanged(String fileName) {
+        for (OnFileChangedListener listener : LISTENERS) {
+            listener.onFileChanged(fileName);
+        }
+    }
+
+    /**
+     * Checks if a fetch left an up to date file, either downloaded again or still valid in cache.
+     * @param statusCode Status code returned by fetchAndStoreFile.
+     * @return Boolean value representing if the stored file can be used.
+     */
+    public static boolean isSuccessful(int statusCode) {
+        return statusCode == HttpURLConnection.HTTP_OK || statusCode == HttpURLConnection.HTTP_NOT_MODIFIED;
     }
 
     /**
@@ -57,56 +107,256 @@ public class FileUtils {
         return file.exists();
     }
 
+    /**
+     * Gets a stamp of the stored file that changes each time the file is replaced, whoever replaced it.
+     * @param fileName Name of the file.
+     * @return String object with the size and modification time of the file, null if it does not exist.
+     */
+    @Nullable
+    public String getFileStamp(String fileName) {
+        DurableFile durableFile = getDurableFile(fileName);
+        durableFile.readLock().lock();
+        try {
+            File file = durableFile.getFile();
+            return file.exists() ? file.length() + ":" + file.lastModified() : null;
+        } finally {
+            durableFile.readLock().unlock();
+        }
+    }
+
     /**
      * Tries to delete the file and returns if file has been deleted.
      * @param fileName Name of the file to be deleted.
      * @return Boolean value representing if file has been removed.
      */
     public boolean deleteFile(String fileName) {
-        File file = new File(this.context.getFilesDir(), fileName);
-        return file.delete();
+        DurableFile durableFile = getDurableFile(fileName);
+        boolean deleted;
+        durableFile.writeLock().lock();
+        try {
+            this.validatorStore.remove(fileName);
+            deleted = durableFile.delete();
+        } finally {
+            durableFile.writeLock().unlock();
+        }
+        if (deleted) {
+            notifyFileChanged(fileName);
+        }
+        return deleted;
+    }
+
+    /**
+     * Lists the stored files whose name starts with the given prefix.
+     * @param prefix Start of the file names to be listed.
+     * @return List of file names, empty if there is none.
+     */
+    public List<String> listFiles(String prefix) {
+        List<String> fileNames = new ArrayList<>();
+        String[] files = this.context.getFilesDir().list();
+        if (files != null) {
+            for (String fileName : files) {
+                if (fileName.startsWith(prefix)) {
+                    fileNames.add(fileName);
+                }
+            }
+        }
+        return fileNames;
+    }
+
+    /**
+     * Writes a String into a file, replacing its previous content atomically.
+     * @param outputFile Name of file where the data will be stored.
+     * @param data String object with the data to be stored.
+     * @return Boolean value representing if the file has been written, otherwise the previous content is kept.
+     */
+    public boolean writeStringToFile(String outputFile, String data) {
+        try {
+            getDurableFile(outputFile).write(data.getBytes("UTF-8"));
+            notifyFileChanged(outputFile);
+            return true;
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "File write failed: " + e.toString());
+        }
+
+        return false;
+    }
+
+    /**
+     * Computes the SHA-1 hash of a file content.
+     * @param inputFile Name of file to be hashed.
+     * @return String object with the hexadecimal hash, null if any error ocurred.
+     */
+    @Nullable
+    public String hashFile(String inputFile) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = BUFFER.get();
+            InputStream inputStream = openFileInput(inputFile);
+            try {
+                int count;
+                while ((count = inputStream.read(buffer)) != -1) {
+                    messageDigest.update(buffer, 0, count);
+                }
+            } finally {
+                inputStream.close();
+            }
+            return toHex(messageDigest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Log.e(Constants.TAG_FILE, "File hash failed: " + e.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Computes the SHA-1 hash of a String.
+     * @param data String object to be hashed.
+     * @return String object with the hexadecimal hash.
+     */
+    public static String hashString(String data) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            return toHex(messageDigest.digest(data.getBytes("UTF-8")));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder stringBuilder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            stringBuilder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return stringBuilder.toString();
     }
 
     /**
      * Fetch and store url data into a file if statusCode is OK, and returns statusCode.
+     * The response body is streamed straight into the file, so memory usage does not depend on its size.
+     * If the file is already cached, the request is conditional and a 304 status means it is still valid.
+     * The body is downloaded into a temporary file that only replaces the stored one once complete, so a
+     * failed fetch keeps the previous content available.
+     * Concurrent calls for the same URL and file, from any FileUtils instance, are coalesced: the first
+     * one performs the request and the others wait for it and get the same status code. If the thread
+     * performing it is interrupted, the waiting ones fetch again instead of getting its failure.
      * @param u URL from which extract the data.
      * @param outputFile Name of file where the data will be stored.
      * @return Integer value representing the server response status code, -1 if any error ocurred.
      */
     public int fetchAndStoreFile(String u, String outputFile) {
-        try {
-            URL url = new URL(u);
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        return fetchAndStoreFile(u, outputFile, 0);
+    }
 
-            if (this.consumer != null) {
-                this.consumer.sign(urlConnection);
+    /**
+     * Fetch and store url data into a file, as fetchAndStoreFile(u, outputFile), with a timeout on the
+     * connection. If the calling thread is interrupted the download is abandoned and the stored file kept.
+     * @param u URL from which extract the data.
+     * @param outputFile Name of file where the data will be stored.
+     * @param timeout Maximum time in milliseconds to connect and to wait for data, 0 for the default.
+     * @return Integer value representing the server response status code, -1 if any error ocurred.
+     */
+    public int fetchAndStoreFile(final String u, final String outputFile, final int timeout) {
+        String key = outputFile + "\n" + u;
+        while (true) {
+            FutureTask<Integer> task = new FutureTask<>(new Callable<Integer>() {
+                @Override
+                public Integer call() throws InterruptedIOException {
+                    int statusCode = fetch(u, outputFile, timeout);
+                    // The cancellation belongs to the calling thread, the callers waiting for it fetch again
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Download cancelled");
+                    }
+                    return statusCode;
+                }
+            });
+            FutureTask<Integer> inFlight = IN_FLIGHT.putIfAbsent(key, task);
+            boolean leader = inFlight == null;
+            if (leader) {
+                try {
+                    task.run();
+                } finally {
+                    IN_FLIGHT.remove(key, task);
+                }
+                inFlight = task;
             }
 
             try {
-                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(urlConnection.getInputStream()));
-                StringBuilder buffer = new StringBuilder();
+                return inFlight.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                if (!leader && e.getCause() instanceof InterruptedIOException) {
+                    continue;
+                }
+                Log.e(Constants.TAG_FILE, "Connection error: " + e.getCause());
+            }
+
+            return -1;
+        }
+    }
 
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    buffer.append(line).append('\n');
+    private int fetch(String u, String outputFile, int timeout) {
+        try {
+            DurableFile durableFile = getDurableFile(outputFile);
+            ValidatorStore.Validator validator = null;
+            // The file and its validators are replaced together, so they are read together as well
+            durableFile.readLock().lock();
+            try {
+                if (durableFile.getFile().exists()) {
+                    validator = this.validatorStore.load(outputFile, u);
                 }
+            } finally {
+                durableFile.readLock().unlock();
+            }
 
-                int statusCode = urlConnection.getResponseCode();
-                if (statusCode == 200) {
-                    String data = buffer.toString();
+            Map<String, String> headers = new HashMap<>();
+            if (validator != null) {
+                if (validator.getETag() != null) {
+                    headers.put("If-None-Match", validator.getETag());
+                }
+                if (validator.getLastModified() != null) {
+                    headers.put("If-Modified-Since", validator.getLastModified());
+                }
+            }
+
+            HttpTransport.Response response = transport.get(u, headers, this.consumer, timeout);
+            try {
+                int statusCode = response.getStatusCode();
+                if (statusCode == HttpURLConnection.HTTP_OK) {
+                    DurableFile.Output output = null;
                     try {
-                        OutputStreamWriter outputStreamWriter = new OutputStreamWriter(context.openFileOutput(outputFile, Context.MODE_PRIVATE));
-                        outputStreamWriter.write(data);
-                        outputStreamWriter.close();
+                        output = durableFile.startWrite();
+                        copy(response.getBody(), output);
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedIOException("Download cancelled");
+                        }
+                        // Synced before locking, so readers are only blocked for the rename and the few bytes of validators
+                        durableFile.syncWrite(output);
                     } catch (IOException e) {
                         Log.e(Constants.TAG_FILE, "File write failed: " + e.toString());
+                        if (output != null) {
+                            durableFile.failWrite(output);
+                        }
+                        return -1;
                     }
+
+                    durableFile.writeLock().lock();
+                    try {
+                        durableFile.finishWrite(output);
+                        this.validatorStore.store(outputFile, u, new ValidatorStore.Validator(response.getHeader("ETag"), response.getHeader("Last-Modified")));
+                    } catch (IOException e) {
+                        Log.e(Constants.TAG_FILE, "File write failed: " + e.toString());
+                        return -1;
+                    } finally {
+                        durableFile.writeLock().unlock();
+                    }
+                    notifyFileChanged(outputFile);
                 }
 
                 return statusCode;
 
             } finally {
-                urlConnection.disconnect();
+                response.close();
             }
         } catch (Exception e) {
             Log.e(Constants.TAG_FILE, "Connection error: " + e.getMessage());
@@ -115,6 +365,45 @@ public class FileUtils {
         return -1;
     }
 
+    /**
+     * Copies the whole input stream into the output stream using the calling thread buffer.
+     * @param inputStream Stream to be copied, not closed by this method.
+     * @param outputStream Stream where the data will be written, not closed by this method.
+     * @throws IOException If either stream fails or the calling thread has been interrupted.
+     */
+    private static void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = BUFFER.get();
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            // Blocking reads ignore interruptions, so a cancelled download stops at the next chunk
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Download cancelled");
+            }
+            outputStream.write(buffer, 0, count);
+        }
+    }
+
+    private DurableFile getDurableFile(String fileName) {
+        return new DurableFile(new File(this.context.getFilesDir(), fileName));
+    }
+
+    /**
+     * Opens a stored file for reading. Once open, the stream keeps reading the same content even if
+     * the file is replaced meanwhile, so only the opening has to hold the read lock.
+     * @param inputFile Name of the file to be opened.
+     * @return Stream with the file content.
+     * @throws FileNotFoundException If the file does not exist.
+     */
+    private InputStream openFileInput(String inputFile) throws FileNotFoundException {
+        DurableFile durableFile = getDurableFile(inputFile);
+        durableFile.readLock().lock();
+        try {
+            return new FileInputStream(durableFile.getFile());
+        } finally {
+            durableFile.readLock().unlock();
+        }
+    }
+
     /**
      * Reads a file and returns the String if read successfully, otherwise, null.
      * @param inputFile Name of file where the data will be read from.
@@ -123,19 +412,19 @@ public class FileUtils {
     @Nullable
     public String readFileToString(String inputFile) {
         try {
-            InputStream inputStream = this.context.openFileInput(inputFile);
-            if (inputStream != null) {
-                InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
-                BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
-                String receiveString;
-                StringBuilder stringBuilder = new StringBuilder();
-
-                while ((receiveString = bufferedReader.readLine()) != null) {
-                    stringBuilder.append(receiveString);
+            File file = new File(this.context.getFilesDir(), inputFile);
+            InputStreamReader inputStreamReader = new InputStreamReader(openFileInput(inputFile), "UTF-8");
+            try {
+                // Sized from the file length so the builder does not have to grow while reading
+                StringBuilder stringBuilder = new StringBuilder((int) file.length());
+                char[] buffer = new char[BUFFER_SIZE];
+                int count;
+                while ((count = inputStreamReader.read(buffer)) != -1) {
+                    stringBuilder.append(buffer, 0, count);
                 }
-
-                inputStream.close();
                 return stringBuilder.toString();
+            } finally {
+                inputStreamReader.close();
             }
         } catch (IOException e) {
             Log.e(Constants.TAG_FILE, "File read to string failed: " + e.toString());
@@ -145,66 +434,254 @@ public class FileUtils {
     }
 
     /**
-     * Reads a file and returns the ICalReader if read successfully, otherwise, null.
-     * @param inputFile Name of file where the data will be read from.
-     * @return ICalReader object containing the data, null if any error ocurred.
+     * Scans a stored ICS file and builds only the events starting within the given interval.
+     * Each VEVENT is discarded by its DTSTART before any object is created for it.
+     * @param inputFile Name of the ICS file.
+     * @param from Earliest start time in milliseconds, exclusive.
+     * @param to Latest start time in milliseconds, inclusive.
+     * @return List of events in file order without subject nor color, null if any error ocurred.
      */
     @Nullable
-    public ICalReader readFileToICalReader(String inputFile) {
-        File file = new File(this.context.getFilesDir(), inputFile);
+    public List<EventModel> readFileToEvents(String inputFile, long from, long to) {
         try {
-            return new ICalReader(file);
-        } catch (FileNotFoundException e) {
-            Log.e(Constants.TAG_FILE, "File read to ICalReader failed: " + e.toString());
+            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(openFileInput(inputFile), "UTF-8"));
+            try {
+                return readEvents(bufferedReader, from, to);
+            } finally {
+                bufferedReader.close();
+            }
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "File read to events failed: " + e.toString());
         }
 
         return null;
     }
 
     /**
-     * Parse a RSSFile into a list of Notifications.
-     * @param data XML RSS data.
-     * @return List of notifications containing the elemental fields filled.
+     * Scans an ICS content and builds only the events starting within the given interval.
+     * @param bufferedReader Reader of the ICS content, not closed by this method.
+     * @param from Earliest start time in milliseconds, exclusive.
+     * @param to Latest start time in milliseconds, inclusive.
+     * @return List of events in content order without subject nor color.
+     * @throws IOException If the content cannot be read.
      */
-    @Nullable
-    public List<NotificationModel> readFileToRSS(String data) {
-        try {
+    static List<EventModel> readEvents(BufferedReader bufferedReader, long from, long to) throws IOException {
+        List<EventModel> events = new ArrayList<>();
+        Calendar calendar = Calendar.getInstance();
+        HashMap<String, TimeZone> timeZones = new HashMap<>();
+
+        boolean insideEvent = false;
+        int nestedComponents = 0;
+        String summary = null, dateStart = null;
+        String line = bufferedReader.readLine();
+        while (line != null) {
+            boolean relevant = insideEvent && nestedComponents == 0 && (line.startsWith("SUMMARY") || line.startsWith("DTSTART"));
+
+            // Unfold continuation lines, only kept for the properties that are used
+            String next = bufferedReader.readLine();
+            StringBuilder unfolded = null;
+            while (next != null && next.length() > 0 && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+                if (relevant) {
+                    if (unfolded == null) {
+                        unfolded = new StringBuilder(line);
+                    }
+                    unfolded.append(next, 1, next.length());
+                }
+                next = bufferedReader.readLine();
+            }
+            if (unfolded != null) {
+                line = unfolded.toString();
+            }
 
-            List<NotificationModel> notificationsList = new ArrayList<>();
-
-            InputStream inputStream = new ByteArrayInputStream(data.getBytes("UTF-8"));
-            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            Document doc = builder.parse(inputStream);
-            doc.getDocumentElement().normalize();
-
-            NodeList nodeList = doc.getElementsByTagName("item");
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                Node node = nodeList.item(i);
-                if (node.getNodeType() == Node.ELEMENT_NODE) {
-                    Element element = (Element) node;
-
-                    byte plainText[];
-                    Node valueTitle = element.getElementsByTagName("title").item(0).getChildNodes().item(0);
-                    plainText = valueTitle.getNodeValue().getBytes("ISO-8859-15");
-                    String title = new String(plainText, "UTF-8");
-                    Node valuePubDate = element.getElementsByTagName("pubDate").item(0).getChildNodes().item(0);
-                    plainText = valuePubDate.getNodeValue().getBytes("ISO-8859-15");
-                    String pubDate = new String(plainText, "UTF-8");
-                    Node valueLink = element.getElementsByTagName("link").item(0).getChildNodes().item(0);
-                    plainText = valueLink.getNodeValue().getBytes("ISO-8859-15");
-                    String link = new String(plainText, "UTF-8");
-
-                    notificationsList.add(new NotificationModel(title, pubDate, link));
+            if (line.equals("BEGIN:VEVENT")) {
+                insideEvent = true;
+                nestedComponents = 0;
+                summary = dateStart = null;
+            } else if (insideEvent && line.startsWith("BEGIN:")) {
+                nestedComponents++;
+            } else if (insideEvent && nestedComponents > 0 && line.startsWith("END:")) {
+                nestedComponents--;
+            } else if (line.equals("END:VEVENT")) {
+                insideEvent = false;
+                if (summary != null && dateStart != null) {
+                    long start = parseICalDate(dateStart, calendar, timeZones);
+                    if (start > from && start <= to) {
+                        events.add(new EventModel(unescapeICalText(summary.substring(findICalValue(summary) + 1)), start, null, 0));
+                    }
+                }
+            } else if (relevant) {
+                if (isICalProperty(line, "SUMMARY")) {
+                    summary = line;
+                } else if (isICalProperty(line, "DTSTART")) {
+                    dateStart = line;
                 }
             }
 
-            return notificationsList;
+            line = next;
+        }
 
-        } catch (IOException | ParserConfigurationException | SAXException e1) {
-            e1.printStackTrace();
+        return events;
+    }
+
+    private static boolean isICalProperty(String line, String name) {
+        if (!line.startsWith(name) || line.length() == name.length()) {
+            return false;
+        }
+        char separator = line.charAt(name.length());
+        return (separator == ':' || separator == ';') && findICalValue(line) >= 0;
+    }
+
+    /**
+     * Finds the colon separating the property name and parameters from its value.
+     * @param line Unfolded content line.
+     * @return Index of the separator, -1 if there is none.
+     */
+    private static int findICalValue(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ':' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a DTSTART property, either a UTC, TZID or floating date-time or a plain date.
+     * @return Time in milliseconds, Long.MIN_VALUE if the value is malformed.
+     */
+    private static long parseICalDate(String line, Calendar calendar, HashMap<String, TimeZone> timeZones) {
+        int separator = findICalValue(line);
+        String parameters = line.substring(0, separator);
+        String value = line.substring(separator + 1).trim();
+
+        TimeZone timeZone;
+        int timeZoneStart = parameters.indexOf("TZID=");
+        if (value.endsWith("Z")) {
+            timeZone = TimeZone.getTimeZone("UTC");
+        } else if (timeZoneStart >= 0) {
+            int timeZoneEnd = parameters.indexOf(';', timeZoneStart);
+            String timeZoneId = parameters.substring(timeZoneStart + 5, timeZoneEnd < 0 ? parameters.length() : timeZoneEnd).replace("\"", "");
+            timeZone = timeZones.get(timeZoneId);
+            if (timeZone == null) {
+                timeZone = TimeZone.getTimeZone(timeZoneId);
+                timeZones.put(timeZoneId, timeZone);
+            }
+        } else {
+            timeZone = TimeZone.getDefault();
+        }
+
+        try {
+            calendar.clear();
+            calendar.setTimeZone(timeZone);
+            int year = Integer.parseInt(value.substring(0, 4));
+            int month = Integer.parseInt(value.substring(4, 6)) - 1;
+            int day = Integer.parseInt(value.substring(6, 8));
+            if (value.length() >= 15 && value.charAt(8) == 'T') {
+                calendar.set(year, month, day, Integer.parseInt(value.substring(9, 11)), Integer.parseInt(value.substring(11, 13)), Integer.parseInt(value.substring(13, 15)));
+            } else {
+                calendar.set(year, month, day, 0, 0, 0);
+            }
+            return calendar.getTimeInMillis();
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            Log.e(Constants.TAG_FILE, "Date parse failed: " + e.toString());
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static String unescapeICalText(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+
+        StringBuilder stringBuilder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char escaped = text.charAt(++i);
+                stringBuilder.append(escaped == 'n' || escaped == 'N' ? '\n' : escaped);
+            } else {
+                stringBuilder.append(c);
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Parse a stored RSS file into a list of Notifications.
+     * @param inputFile Name of the RSS file.
+     * @return List of notifications containing the elemental fields filled, null if any error ocurred.
+     */
+    @Nullable
+    public List<NotificationModel> readFileToRSS(String inputFile) {
+        return readFileToRSS(inputFile, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parse a stored RSS file into a list of Notifications, streaming it in a single pass.
+     * Parsing stops as soon as the requested number of items has been read.
+     * @param inputFile Name of the RSS file.
+     * @param maxItems Maximum number of items to read, RACO feeds list the newest ones first.
+     * @return List of notifications containing the elemental fields filled, null if any error ocurred.
+     */
+    @Nullable
+    public List<NotificationModel> readFileToRSS(String inputFile, int maxItems) {
+        try {
+            Reader reader = new Utf8FallbackReader(openFileInput(inputFile));
+            try {
+                List<NotificationModel> notificationsList = new ArrayList<>();
+
+                XmlPullParser parser = Xml.newPullParser();
+                parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+                parser.setInput(reader);
+
+                boolean insideItem = false;
+                String title = null, pubDate = null, link = null;
+                int eventType = parser.getEventType();
+                while (eventType != XmlPullParser.END_DOCUMENT && notificationsList.size() < maxItems) {
+                    if (eventType == XmlPullParser.START_TAG) {
+                        String tag = parser.getName();
+                        if (tag.equals("item")) {
+                            insideItem = true;
+                            title = pubDate = link = null;
+                        } else if (insideItem && tag.equals("title")) {
+                            title = parser.nextText().trim();
+                        } else if (insideItem && tag.equals("pubDate")) {
+                            pubDate = parser.nextText().trim();
+                        } else if (insideItem && tag.equals("link")) {
+                            link = parser.nextText().trim();
+                        }
+                    } else if (eventType == XmlPullParser.END_TAG && parser.getName().equals("item")) {
+                        insideItem = false;
+                        if (title != null && pubDate != null && link != null) {
+                            long timestamp = NotificationDates.parsePubDate(pubDate);
+                            notificationsList.add(new NotificationModel(title, pubDate, link, timestamp, NotificationDates.formatDisplayDate(timestamp, pubDate)));
+                        }
+                    }
+                    eventType = parser.next();
+                }
+
+                return notificationsList;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XmlPullParserException e) {
+            Log.e(Constants.TAG_FILE, "File read to RSS failed: " + e.toString());
         }
 
         return null;
+    }
+
+    public interface OnFileChangedListener {
+
+        /**
+         * Called each time a stored file is rewritten or deleted, from the thread that changed it.
+         * @param fileName Name of the changed file.
+         */
+        void onFileChanged(String fileName);
 
     }
 
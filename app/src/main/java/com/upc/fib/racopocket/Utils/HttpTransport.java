@@ -0,0 +1,60 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import oauth.signpost.OAuthConsumer;
+import oauth.signpost.exception.OAuthException;
+
+/**
+ * Performs the HTTP requests of FileUtils. Implementations are expected to reuse connections,
+ * negotiate compression and report the transferred bytes to TransferStats.
+ */
+public interface HttpTransport {
+
+    /**
+     * Performs a GET request.
+     * @param url URL to be requested.
+     * @param headers Extra request headers.
+     * @param consumer OAuth consumer used to sign the request, null to avoid signing.
+     * @param timeout Maximum time in milliseconds to connect and to wait for data, 0 for the transport default.
+     * @return Response object, to be closed once its body has been read.
+     * @throws IOException If the request cannot be performed.
+     * @throws OAuthException If the request cannot be signed.
+     */
+    Response get(String url, Map<String, String> headers, @Nullable OAuthConsumer consumer, int timeout) throws IOException, OAuthException;
+
+    interface Response {
+
+        /**
+         * Gets the response status code.
+         * @return Integer value with the status code.
+         */
+        int getStatusCode();
+
+        /**
+         * Gets a response header.
+         * @param name Header name.
+         * @return String object with the header value, null if absent.
+         */
+        @Nullable
+        String getHeader(String name);
+
+        /**
+         * Gets the response body, already decompressed.
+         * @return Stream with the body, closed along with the response.
+         * @throws IOException If the body cannot be read.
+         */
+        InputStream getBody() throws IOException;
+
+        /**
+         * Releases the response, so its connection can be reused.
+         */
+        void close();
+
+    }
+
+}
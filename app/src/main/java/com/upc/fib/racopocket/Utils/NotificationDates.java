@@ -0,0 +1,53 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.util.Log;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+public class NotificationDates {
+
+    private static final String PUB_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss Z";
+    private static final String DISPLAY_FORMAT = "dd/MM/yyyy HH':'mm':'ss";
+
+    // SimpleDateFormat is not thread safe, each thread reuses its own instances
+    private static final ThreadLocal<SimpleDateFormat> PUB_DATE_FORMATTER = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(PUB_DATE_FORMAT, Locale.ENGLISH);
+        }
+    };
+    private static final ThreadLocal<SimpleDateFormat> DISPLAY_FORMATTER = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(DISPLAY_FORMAT, Locale.getDefault());
+        }
+    };
+
+    /**
+     * Parses an RSS publication date.
+     * @param pubDate Date in RFC 822 format.
+     * @return Time in milliseconds, 0 if the date is malformed.
+     */
+    public static long parsePubDate(String pubDate) {
+        try {
+            return PUB_DATE_FORMATTER.get().parse(pubDate).getTime();
+        } catch (ParseException e) {
+            Log.e(Constants.TAG_FILE, "Date parse failed: " + e.toString());
+            return 0;
+        }
+    }
+
+    /**
+     * Formats a publication time to be shown in the notifications list.
+     * @param timestamp Time in milliseconds, as returned by parsePubDate.
+     * @param pubDate Original publication date, shown as is if it could not be parsed.
+     * @return String object with the date to display.
+     */
+    public static String formatDisplayDate(long timestamp, String pubDate) {
+        return timestamp == 0 ? pubDate : DISPLAY_FORMATTER.get().format(new Date(timestamp));
+    }
+
+}
@@ -0,0 +1,272 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.upc.fib.racopocket.Models.NotificationModel;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+public class NotificationInbox {
+
+    public static final String INBOX_FILE = "notifications-inbox.json";
+
+    private static final Comparator<Entry> NEWEST_FIRST = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            long lhsTime = lhs.notification.getTimestamp();
+            long rhsTime = rhs.notification.getTimestamp();
+            if (lhsTime != rhsTime) {
+                return lhsTime > rhsTime ? -1 : 1;
+            }
+            int links = lhs.notification.getLink().compareTo(rhs.notification.getLink());
+            return links != 0 ? links : lhs.subjectId.compareTo(rhs.subjectId);
+        }
+    };
+
+    private FileUtils fileUtils;
+
+    // A notice posted to several subjects has an entry for each of them
+    private HashMap<String, Entry> entriesByKey = new HashMap<>();
+    private List<Entry> sortedEntries = new ArrayList<>();
+    // Stamp of the feed file each subject was last merged from
+    private HashMap<String, String> subjectStamps = new HashMap<>();
+    private long lastOpened;
+    private boolean modified;
+
+    /**
+     * NotificationInbox constructor, loads the stored inbox if there is any.
+     * @param fileUtils FileUtils object used to read and write the inbox file.
+     */
+    public NotificationInbox(FileUtils fileUtils) {
+        this.fileUtils = fileUtils;
+
+        if (fileUtils.checkFileExists(INBOX_FILE)) {
+            try {
+                JSONObject inboxJSONObject = new JSONObject(fileUtils.readFileToString(INBOX_FILE));
+                this.lastOpened = inboxJSONObject.getLong("lastOpened");
+                // Inboxes stored without stamps get every feed merged again
+                JSONObject subjectsJSONObject = inboxJSONObject.optJSONObject("subjects");
+                if (subjectsJSONObject != null) {
+                    Iterator<String> subjectIds = subjectsJSONObject.keys();
+                    while (subjectIds.hasNext()) {
+                        String subjectId = subjectIds.next();
+                        this.subjectStamps.put(subjectId, subjectsJSONObject.getString(subjectId));
+                    }
+                }
+                JSONArray itemsJSONArray = inboxJSONObject.getJSONArray("items");
+                for (int i = 0; i < itemsJSONArray.length(); i++) {
+                    JSONObject itemJSONObject = itemsJSONArray.getJSONObject(i);
+                    String pubDate = itemJSONObject.getString("pubDate");
+                    long timestamp = itemJSONObject.getLong("time");
+                    NotificationModel notification = new NotificationModel(itemJSONObject.getString("title"), pubDate, itemJSONObject.getString("link"), timestamp, NotificationDates.formatDisplayDate(timestamp, pubDate));
+                    Entry entry = new Entry(itemJSONObject.getString("subject"), notification, itemJSONObject.getLong("received"));
+                    this.entriesByKey.put(entry.getKey(), entry);
+                    this.sortedEntries.add(entry);
+                }
+                // Stored already sorted, this only guards against hand edited files
+                Collections.sort(this.sortedEntries, NEWEST_FIRST);
+            } catch (JSONException e) {
+                Log.e(Constants.TAG_JSON, "JSON parse failed: " + e.toString());
+                this.entriesByKey.clear();
+                this.sortedEntries.clear();
+                this.subjectStamps.clear();
+            }
+        }
+    }
+
+    /**
+     * Replaces the notifications of a subject with the ones currently in its feed, keeping it sorted.
+     * Notifications already known keep the time they were received, so they stay read, and the ones
+     * no longer in the feed are removed. Changes are only stored by save.
+     * @param subjectId Subject the notifications belong to.
+     * @param stamp Stamp of the feed file the notifications were parsed from.
+     * @param notifications Notifications parsed from the subject feed.
+     * @param now Current time in milliseconds.
+     * @return Number of notifications added.
+     */
+    public synchronized int merge(String subjectId, String stamp, List<NotificationModel> notifications, long now) {
+        HashMap<String, Entry> previousEntries = new HashMap<>();
+        Iterator<Entry> iterator = this.sortedEntries.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.subjectId.equals(subjectId)) {
+                iterator.remove();
+                this.entriesByKey.remove(entry.getKey());
+                previousEntries.put(entry.getKey(), entry);
+            }
+        }
+
+        int added = 0;
+        for (NotificationModel notification : notifications) {
+            Entry entry = new Entry(subjectId, notification, now);
+            if (this.entriesByKey.containsKey(entry.getKey())) {
+                continue;
+            }
+            Entry previousEntry = previousEntries.get(entry.getKey());
+            if (previousEntry != null) {
+                entry.received = previousEntry.received;
+            } else {
+                added++;
+            }
+
+            int position = Collections.binarySearch(this.sortedEntries, entry, NEWEST_FIRST);
+            this.sortedEntries.add(position < 0 ? -position - 1 : position, entry);
+            this.entriesByKey.put(entry.getKey(), entry);
+        }
+
+        this.subjectStamps.put(subjectId, stamp);
+        this.modified = true;
+        return added;
+    }
+
+    /**
+     * Gets the stamp of the feed file the notifications of a subject were last merged from.
+     * @param subjectId Subject identifier.
+     * @return String object with the stamp, null if the subject feed has never been merged.
+     */
+    @Nullable
+    public synchronized String getSubjectStamp(String subjectId) {
+        return this.subjectStamps.get(subjectId);
+    }
+
+    /**
+     * Removes the notifications of the subjects the student is no longer enrolled in. Changes are only
+     * stored by save.
+     * @param subjectIds Identifiers of the subjects to keep.
+     */
+    public synchronized void retainSubjects(Collection<String> subjectIds) {
+        boolean changed = this.subjectStamps.keySet().retainAll(subjectIds);
+        Iterator<Entry> iterator = this.sortedEntries.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (!subjectIds.contains(entry.subjectId)) {
+                iterator.remove();
+                this.entriesByKey.remove(entry.getKey());
+                changed = true;
+            }
+        }
+
+        this.modified |= changed;
+    }
+
+    /**
+     * Gets the notifications of every subject, a notice posted to several subjects listed once.
+     * @return List of notifications, newest first.
+     */
+    public synchronized List<NotificationModel> getAll() {
+        List<NotificationModel> notifications = new ArrayList<>(this.sortedEntries.size());
+        Set<String> links = new HashSet<>();
+        for (Entry entry : this.sortedEntries) {
+            if (links.add(entry.notification.getLink())) {
+                notifications.add(entry.notification);
+            }
+        }
+        return notifications;
+    }
+
+    /**
+     * Gets the notifications of a single subject.
+     * @param subjectId Subject identifier.
+     * @return List of notifications, newest first.
+     */
+    public synchronized List<NotificationModel> getSubjectNotifications(String subjectId) {
+        List<NotificationModel> notifications = new ArrayList<>();
+        for (Entry entry : this.sortedEntries) {
+            if (entry.subjectId.equals(subjectId)) {
+                notifications.add(entry.notification);
+            }
+        }
+        return notifications;
+    }
+
+    /**
+     * Gets the notifications received since the inbox was last opened, a notice posted to several
+     * subjects listed once.
+     * @return List of notifications, newest first.
+     */
+    public synchronized List<NotificationModel> getUnread() {
+        List<NotificationModel> notifications = new ArrayList<>();
+        Set<String> links = new HashSet<>();
+        for (Entry entry : this.sortedEntries) {
+            if (entry.received > this.lastOpened && links.add(entry.notification.getLink())) {
+                notifications.add(entry.notification);
+            }
+        }
+        return notifications;
+    }
+
+    /**
+     * Marks every notification received so far as read. Changes are only stored by save.
+     * @param now Current time in milliseconds.
+     */
+    public synchronized void markOpened(long now) {
+        this.lastOpened = now;
+        this.modified = true;
+    }
+
+    /**
+     * Stores the inbox if it has changed since it was loaded or last saved. Meant to be called once
+     * per refresh, after every merge.
+     */
+    public synchronized void save() {
+        if (!this.modified) {
+            return;
+        }
+
+        try {
+            JSONArray itemsJSONArray = new JSONArray();
+            for (Entry entry : this.sortedEntries) {
+                JSONObject itemJSONObject = new JSONObject();
+                itemJSONObject.put("subject", entry.subjectId);
+                itemJSONObject.put("title", entry.notification.getTitle());
+                itemJSONObject.put("pubDate", entry.notification.getPubDate());
+                itemJSONObject.put("link", entry.notification.getLink());
+                itemJSONObject.put("time", entry.notification.getTimestamp());
+                itemJSONObject.put("received", entry.received);
+                itemsJSONArray.put(itemJSONObject);
+            }
+
+            JSONObject inboxJSONObject = new JSONObject();
+            inboxJSONObject.put("lastOpened", this.lastOpened);
+            inboxJSONObject.put("subjects", new JSONObject(this.subjectStamps));
+            inboxJSONObject.put("items", itemsJSONArray);
+            if (this.fileUtils.writeStringToFile(INBOX_FILE, inboxJSONObject.toString())) {
+                this.modified = false;
+            }
+        } catch (JSONException e) {
+            Log.e(Constants.TAG_JSON, "JSON write failed: " + e.toString());
+        }
+    }
+
+    private static class Entry {
+
+        private String subjectId;
+        private NotificationModel notification;
+        private long received;
+
+        Entry(String subjectId, NotificationModel notification, long received) {
+            this.subjectId = subjectId;
+            this.notification = notification;
+            this.received = received;
+        }
+
+        private String getKey() {
+            return this.subjectId + "\n" + this.notification.getLink();
+        }
+
+    }
+
+}
@@ -0,0 +1,259 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.upc.fib.racopocket.Models.ClassroomModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * History of the free places of each classroom, kept as a fixed size ring of samples per classroom
+ * so its memory and file size are bounded however long it has been collecting. It answers how many
+ * places a classroom usually has free at a given time without any request.
+ */
+public class OccupancyHistory {
+
+    public static final String HISTORY_FILE = "classrooms-history.bin";
+
+    private static final int MAGIC = 0x52504f48;
+    private static final int VERSION = 1;
+
+    private static final int CAPACITY = 288;
+    private static final int MAX_CLASSROOMS = 128;
+    private static final int SAMPLE_INTERVAL = 15;
+    // Samples taken within this many minutes of the time of day, on the same kind of day, are compared
+    private static final int TIME_WINDOW = 30;
+    private static final int MIN_MATCHES = 3;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+
+    private Context context;
+    private boolean loaded;
+
+    private HashMap<String, Ring> rings = new HashMap<>();
+    private int[] matches = new int[CAPACITY];
+
+    /**
+     * OccupancyHistory constructor. The stored history is loaded on first use.
+     * @param context Desired context.
+     */
+    public OccupancyHistory(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Records the free places of each classroom, skipping the classrooms sampled less than
+     * SAMPLE_INTERVAL minutes ago so frequent refreshes do not flush older samples out of the ring.
+     * @param classrooms Classrooms as just fetched.
+     * @param time Time of the fetch in milliseconds.
+     */
+    public synchronized void record(List<ClassroomModel> classrooms, long time) {
+        if (!this.loaded) {
+            load();
+        }
+
+        int minute = (int) (time / MINUTE_IN_MILLIS);
+        boolean changed = false;
+        for (ClassroomModel classroom : classrooms) {
+            Ring ring = this.rings.get(classroom.getName());
+            if (ring == null) {
+                if (this.rings.size() >= MAX_CLASSROOMS) {
+                    evictOldest();
+                }
+                ring = new Ring();
+                this.rings.put(classroom.getName(), ring);
+            } else if (ring.count > 0 && minute - ring.getLastMinute() < SAMPLE_INTERVAL) {
+                continue;
+            }
+            ring.add(minute, classroom.getAvailability());
+            changed = true;
+        }
+
+        if (changed) {
+            write();
+        }
+    }
+
+    /**
+     * Gets how many places a classroom usually has free at the given time of day, as the median of
+     * its samples taken around that time on the same kind of day, weekday or weekend.
+     * @param name Classroom name.
+     * @param time Time in milliseconds.
+     * @return Integer value with the usual free places, -1 if there are not enough samples.
+     */
+    public synchronized int getUsualAvailability(String name, long time) {
+        if (!this.loaded) {
+            load();
+        }
+
+        Ring ring = this.rings.get(name);
+        if (ring == null) {
+            return -1;
+        }
+
+        TimeZone timeZone = TimeZone.getDefault();
+        int localMinute = toLocalMinute(timeZone, (int) (time / MINUTE_IN_MILLIS));
+        int minuteOfDay = localMinute % MINUTES_PER_DAY;
+        boolean weekend = isWeekend(localMinute);
+
+        int count = 0;
+        for (int i = 0; i < ring.count; i++) {
+            int sampleMinute = toLocalMinute(timeZone, ring.minutes[i]);
+            int distance = Math.abs(sampleMinute % MINUTES_PER_DAY - minuteOfDay);
+            distance = Math.min(distance, MINUTES_PER_DAY - distance);
+            if (distance <= TIME_WINDOW && isWeekend(sampleMinute) == weekend) {
+                this.matches[count++] = ring.seats[i];
+            }
+        }
+        if (count < MIN_MATCHES) {
+            return -1;
+        }
+
+        Arrays.sort(this.matches, 0, count);
+        return this.matches[count / 2];
+    }
+
+    private static int toLocalMinute(TimeZone timeZone, int minute) {
+        return minute + (int) (timeZone.getOffset(minute * MINUTE_IN_MILLIS) / MINUTE_IN_MILLIS);
+    }
+
+    private static boolean isWeekend(int localMinute) {
+        // The epoch was a Thursday, so day 0 is the fourth of the week counting from Monday
+        int dayOfWeek = (localMinute / MINUTES_PER_DAY + 3) % 7;
+        return dayOfWeek >= 5;
+    }
+
+    /**
+     * Removes the classroom sampled longest ago, which is likely no longer listed.
+     */
+    private void evictOldest() {
+        String oldest = null;
+        int oldestMinute = Integer.MAX_VALUE;
+        for (Map.Entry<String, Ring> entry : this.rings.entrySet()) {
+            int lastMinute = entry.getValue().getLastMinute();
+            if (lastMinute < oldestMinute) {
+                oldest = entry.getKey();
+                oldestMinute = lastMinute;
+            }
+        }
+        this.rings.remove(oldest);
+    }
+
+    private void load() {
+        this.loaded = true;
+
+        File file = new File(this.context.getFilesDir(), HISTORY_FILE);
+        byte[] data = new byte[(int) file.length()];
+        try {
+            FileInputStream fileInputStream = new FileInputStream(file);
+            try {
+                new DataInputStream(fileInputStream).readFully(data);
+            } finally {
+                fileInputStream.close();
+            }
+        } catch (FileNotFoundException e) {
+            return;
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Occupancy history read failed: " + e.toString());
+            return;
+        }
+
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return;
+            }
+
+            int classrooms = input.readInt();
+            for (int i = 0; i < classrooms; i++) {
+                String name = input.readUTF();
+                Ring ring = new Ring();
+                int count = input.readInt();
+                for (int j = 0; j < count; j++) {
+                    ring.add(input.readInt(), input.readShort());
+                }
+                this.rings.put(name, ring);
+            }
+
+            // A history written with larger limits keeps the classrooms sampled most recently
+            while (this.rings.size() > MAX_CLASSROOMS) {
+                evictOldest();
+            }
+            return;
+        } catch (EOFException e) {
+            Log.e(Constants.TAG_FILE, "Occupancy history truncated: " + e.toString());
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Occupancy history read failed: " + e.toString());
+        }
+
+        this.rings.clear();
+    }
+
+    /**
+     * Stores every ring, its samples written oldest first.
+     */
+    private void write() {
+        File file = new File(this.context.getFilesDir(), HISTORY_FILE);
+        try {
+            ByteArrayOutputStream history = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(history);
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(this.rings.size());
+            for (Map.Entry<String, Ring> entry : this.rings.entrySet()) {
+                Ring ring = entry.getValue();
+                output.writeUTF(entry.getKey());
+                output.writeInt(ring.count);
+                for (int i = 0; i < ring.count; i++) {
+                    int index = (ring.next - ring.count + i + CAPACITY) % CAPACITY;
+                    output.writeInt(ring.minutes[index]);
+                    output.writeShort(ring.seats[index]);
+                }
+            }
+
+            new DurableFile(file).write(history.toByteArray());
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Occupancy history write failed: " + e.toString());
+        }
+    }
+
+    /**
+     * Samples of a classroom, the newest one overwriting the oldest once full.
+     */
+    private static class Ring {
+
+        private int[] minutes = new int[CAPACITY];
+        private short[] seats = new short[CAPACITY];
+        private int next;
+        private int count;
+
+        private void add(int minute, int freeSeats) {
+            this.minutes[this.next] = minute;
+            this.seats[this.next] = (short) Math.min(freeSeats, Short.MAX_VALUE);
+            this.next = (this.next + 1) % CAPACITY;
+            if (this.count < CAPACITY) {
+                this.count++;
+            }
+        }
+
+        private int getLastMinute() {
+            return this.minutes[(this.next - 1 + CAPACITY) % CAPACITY];
+        }
+
+    }
+
+}
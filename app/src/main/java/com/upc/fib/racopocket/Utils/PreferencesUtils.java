@@ -50,6 +50,28 @@ public class PreferencesUtils {
         return sharedPreferences.getBoolean(preferenceKey, false);
     }
 
+    /**
+     * Stores a numeric preference given a key and a value.
+     * @param context Desired context.
+     * @param preferenceKey Preference key.
+     * @param preferenceValue Preference value.
+     */
+    public static void storeLongPreference(Context context, String preferenceKey, long preferenceValue) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        sharedPreferences.edit().putLong(preferenceKey, preferenceValue).apply();
+    }
+
+    /**
+     * Reads a numeric preference given a key.
+     * @param context Desired context.
+     * @param preferenceKey Preference key.
+     * @return Long value with the preference value, 0 if it does not exist.
+     */
+    public static long recoverLongPreference(Context context, String preferenceKey) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        return sharedPreferences.getLong(preferenceKey, 0);
+    }
+
     /**
      * Store OAuth flow tokens.
      * @param context Desired context.
@@ -0,0 +1,226 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Typed RecyclerView adapter with stable ids. New items are diffed against the shown ones by key,
+ * so only the rows that were inserted, removed, moved or changed are rebound.
+ * @param <T> Item type.
+ * @param <VH> ViewHolder type.
+ */
+public abstract class RecyclerListAdapter<T, VH extends RecyclerView.ViewHolder> extends RecyclerView.Adapter<VH> {
+
+    // Separates a repeated key from its occurrence number, cannot appear in a key
+    private static final char OCCURRENCE_SEPARATOR = '\u0000';
+
+    private static final int OPERATION_REMOVE = 0;
+    private static final int OPERATION_INSERT = 1;
+    private static final int OPERATION_MOVE = 2;
+    private static final int OPERATION_CHANGE = 3;
+
+    private List<T> items = new ArrayList<>();
+    private List<String> keys = new ArrayList<>();
+    private HashMap<String, Long> ids = new HashMap<>();
+    private long nextId;
+    private OnItemClickListener<T> onItemClickListener;
+
+    public RecyclerListAdapter() {
+        setHasStableIds(true);
+    }
+
+    /**
+     * Gets the key identifying an item across updates. Items sharing a key are told apart by their
+     * order among them.
+     * @param item Item to identify.
+     * @return String object with the key.
+     */
+    protected abstract String getItemKey(T item);
+
+    /**
+     * Checks if an item with the same key has to be rebound.
+     * @param oldItem Item currently shown.
+     * @param newItem Item replacing it.
+     * @return Boolean value representing if both items display the same data.
+     */
+    protected abstract boolean areContentsTheSame(T oldItem, T newItem);
+
+    /**
+     * Creates the ViewHolder of a row, click listeners are attached by the adapter.
+     * @param parent Parent RecyclerView.
+     * @param viewType Type of the row, as returned by getItemViewType.
+     * @return ViewHolder object holding the row views.
+     */
+    protected abstract VH onCreateItemViewHolder(ViewGroup parent, int viewType);
+
+    /**
+     * Sets the listener notified when a row is clicked.
+     * @param onItemClickListener Listener to be called with the clicked item.
+     */
+    public void setOnItemClickListener(OnItemClickListener<T> onItemClickListener) {
+        this.onItemClickListener = onItemClickListener;
+    }
+
+    /**
+     * Gets the item shown at a position.
+     * @param position Adapter position.
+     * @return Item at that position.
+     */
+    public T getItem(int position) {
+        return this.items.get(position);
+    }
+
+    /**
+     * Replaces the shown items, notifying only the differences. Runs in O(n log n). The differences
+     * are computed first and notified once the new items are in place, so observers reading the
+     * adapter while notified already see them.
+     * @param newItems Items to show, in display order.
+     */
+    public void setItems(List<T> newItems) {
+        List<String> newKeys = getUniqueKeys(newItems);
+        HashSet<String> newKeySet = new HashSet<>(newKeys);
+        List<int[]> operations = new ArrayList<>();
+
+        // Removed rows first, from the end so the positions of the remaining ones stay valid
+        for (int i = this.keys.size() - 1; i >= 0; i--) {
+            if (!newKeySet.contains(this.keys.get(i))) {
+                operations.add(new int[]{OPERATION_REMOVE, i});
+            }
+        }
+
+        List<T> survivors = new ArrayList<>();
+        HashMap<String, Integer> survivorIndexes = new HashMap<>();
+        for (int i = 0; i < this.keys.size(); i++) {
+            if (newKeySet.contains(this.keys.get(i))) {
+                survivorIndexes.put(this.keys.get(i), survivors.size());
+                survivors.add(this.items.get(i));
+            }
+        }
+
+        // Once a position is placed, the rows after it are the survivors not placed yet in their old
+        // order, so the current position of a survivor is the number of those before it
+        int[] pending = new int[survivors.size() + 1];
+        for (int i = 0; i < survivors.size(); i++) {
+            updatePending(pending, i, 1);
+        }
+
+        for (int position = 0; position < newItems.size(); position++) {
+            Integer survivorIndex = survivorIndexes.get(newKeys.get(position));
+            if (survivorIndex == null) {
+                operations.add(new int[]{OPERATION_INSERT, position});
+                continue;
+            }
+
+            int oldPosition = position + countPending(pending, survivorIndex);
+            if (oldPosition != position) {
+                operations.add(new int[]{OPERATION_MOVE, oldPosition, position});
+            }
+            updatePending(pending, survivorIndex, -1);
+            if (!areContentsTheSame(survivors.get(survivorIndex), newItems.get(position))) {
+                operations.add(new int[]{OPERATION_CHANGE, position});
+            }
+        }
+
+        // Ids are kept for the rows still shown and never reused for another key
+        HashMap<String, Long> newIds = new HashMap<>();
+        for (String key : newKeys) {
+            Long id = this.ids.get(key);
+            newIds.put(key, id != null ? id : this.nextId++);
+        }
+
+        this.items = new ArrayList<>(newItems);
+        this.keys = newKeys;
+        this.ids = newIds;
+
+        for (int[] operation : operations) {
+            switch (operation[0]) {
+                case OPERATION_REMOVE:
+                    notifyItemRemoved(operation[1]);
+                    break;
+                case OPERATION_INSERT:
+                    notifyItemInserted(operation[1]);
+                    break;
+                case OPERATION_MOVE:
+                    notifyItemMoved(operation[1], operation[2]);
+                    break;
+                case OPERATION_CHANGE:
+                    notifyItemChanged(operation[1]);
+                    break;
+            }
+        }
+    }
+
+    private List<String> getUniqueKeys(List<T> items) {
+        List<String> uniqueKeys = new ArrayList<>(items.size());
+        HashMap<String, Integer> occurrences = new HashMap<>();
+        for (T item : items) {
+            String key = getItemKey(item);
+            Integer occurrence = occurrences.get(key);
+            occurrences.put(key, occurrence == null ? 1 : occurrence + 1);
+            uniqueKeys.add(occurrence == null ? key : key + OCCURRENCE_SEPARATOR + occurrence);
+        }
+        return uniqueKeys;
+    }
+
+    /**
+     * Adds a value to an entry of a Fenwick tree.
+     */
+    private static void updatePending(int[] tree, int index, int value) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += value;
+        }
+    }
+
+    /**
+     * Sums the entries of a Fenwick tree before the given index.
+     */
+    private static int countPending(int[] tree, int index) {
+        int sum = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public final VH onCreateViewHolder(ViewGroup parent, int viewType) {
+        final VH holder = onCreateItemViewHolder(parent, viewType);
+        holder.itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                int position = holder.getAdapterPosition();
+                if (onItemClickListener != null && position != RecyclerView.NO_POSITION) {
+                    onItemClickListener.onItemClick(items.get(position));
+                }
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public int getItemCount() {
+        return this.items.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return this.ids.get(this.keys.get(position));
+    }
+
+    public interface OnItemClickListener<T> {
+
+        /**
+         * Called when a row is clicked.
+         * @param item Item shown in the clicked row.
+         */
+        void onItemClick(T item);
+
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.upc.fib.racopocket.Utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Normalizes text for the local search indexes: lower case, without accents and split into words,
+ * so accented and plain spellings of the same word match.
+ */
+public class SearchTokenizer {
+
+    private static final int MIN_TOKEN_LENGTH = 2;
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * Lower cases the text and removes its accents. The catalan middle dot (U+00B7) is removed as well
+     * so words with a geminated l are kept as a single word.
+     * @param text Text to be folded.
+     * @return Folded text.
+     */
+    public static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder stringBuilder = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            int type = Character.getType(c);
+            if (type != Character.NON_SPACING_MARK && type != Character.COMBINING_SPACING_MARK && c != '\u00B7') {
+                stringBuilder.append(c);
+            }
+        }
+        return stringBuilder.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Splits the folded text into words made of letters and digits, skipping single characters.
+     * @param text Text to be tokenized.
+     * @return List of folded words, in the same order as in the text.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start == -1) {
+                start = i;
+            } else if (!wordChar && start != -1) {
+                if (i - start >= MIN_TOKEN_LENGTH) {
+                    tokens.add(folded.substring(start, i));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Finds subject identifiers inside free text, ignoring case, with a single pass over the text.
+ * Aho-Corasick automaton built once from the identifiers.
+ */
+public class SubjectMatcher {
+
+    private List<String> subjectIds;
+    private List<HashMap<Character, Integer>> transitions = new ArrayList<>();
+    private int[] failure;
+    private int[] output;
+    private int maxLength;
+
+    /**
+     * SubjectMatcher constructor.
+     * @param subjectIds Identifiers to search for.
+     */
+    public SubjectMatcher(List<String> subjectIds) {
+        this.subjectIds = subjectIds;
+
+        List<Integer> terminals = new ArrayList<>();
+        this.transitions.add(new HashMap<Character, Integer>());
+        terminals.add(-1);
+        for (int i = 0; i < subjectIds.size(); i++) {
+            String subjectId = subjectIds.get(i);
+            if (subjectId.length() == 0) {
+                continue;
+            }
+            this.maxLength = Math.max(this.maxLength, subjectId.length());
+
+            int node = 0;
+            for (int j = 0; j < subjectId.length(); j++) {
+                char c = Character.toLowerCase(subjectId.charAt(j));
+                Integer next = this.transitions.get(node).get(c);
+                if (next == null) {
+                    next = this.transitions.size();
+                    this.transitions.add(new HashMap<Character, Integer>());
+                    terminals.add(-1);
+                    this.transitions.get(node).put(c, next);
+                }
+                node = next;
+            }
+            if (terminals.get(node) == -1) {
+                terminals.set(node, i);
+            }
+        }
+
+        // Breadth first, so the failure of every shallower node is already known
+        this.failure = new int[this.transitions.size()];
+        this.output = new int[this.transitions.size()];
+        Arrays.fill(this.output, -1);
+        Queue<Integer> queue = new LinkedList<>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int node = queue.remove();
+            for (Map.Entry<Character, Integer> transition : this.transitions.get(node).entrySet()) {
+                int child = transition.getValue();
+                this.failure[child] = node == 0 ? 0 : step(this.failure[node], transition.getKey());
+                queue.add(child);
+            }
+            // Longest identifier ending at this node, either its own or one of its suffixes
+            this.output[node] = terminals.get(node) != -1 ? terminals.get(node) : (node == 0 ? -1 : this.output[this.failure[node]]);
+        }
+    }
+
+    /**
+     * Finds the identifier that appears first in the text, the longest one if several start at the same position.
+     * @param text Text to search in.
+     * @return String object with the identifier, null if none appears.
+     */
+    @Nullable
+    public String findSubject(String text) {
+        int bestStart = Integer.MAX_VALUE;
+        int bestSubject = -1;
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            // No identifier ending from here on can start before the best one
+            if (i - this.maxLength + 1 > bestStart) {
+                break;
+            }
+
+            node = step(node, Character.toLowerCase(text.charAt(i)));
+            int subject = this.output[node];
+            if (subject != -1) {
+                // Ending later with the same start means a longer identifier
+                int start = i - this.subjectIds.get(subject).length() + 1;
+                if (start <= bestStart) {
+                    bestStart = start;
+                    bestSubject = subject;
+                }
+            }
+        }
+
+        return bestSubject == -1 ? null : this.subjectIds.get(bestSubject);
+    }
+
+    private int step(int node, char c) {
+        while (true) {
+            Integer next = this.transitions.get(node).get(c);
+            if (next != null) {
+                return next;
+            }
+            if (node == 0) {
+                return 0;
+            }
+            node = this.failure[node];
+        }
+    }
+
+}
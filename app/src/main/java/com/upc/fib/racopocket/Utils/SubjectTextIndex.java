@@ -0,0 +1,461 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * BM25 ranked full-text index over the subject files: name, teachers, objectives, description and
+ * bibliography. Each subject is stored with the size and modification time of its file, so only
+ * the subjects whose file has changed are indexed again.
+ */
+public class SubjectTextIndex {
+
+    public static final String INDEX_FILE = "subjects-text-index.bin";
+
+    private static final int MAGIC = 0x52505458;
+    private static final int VERSION = 1;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Name and teachers are repeated so a match there outweighs a word lost in the description
+    private static final int NAME_WEIGHT = 3;
+    private static final int TEACHERS_WEIGHT = 3;
+
+    private Context context;
+    private FileUtils fileUtils;
+    private boolean loaded;
+
+    private HashMap<String, Document> documents = new HashMap<>();
+
+    // Inverted index, rebuilt from the documents on the first search after any change
+    private String[] documentCodes;
+    private int[] documentLengths;
+    private double averageLength;
+    private String[] terms;
+    private int[][] postingDocuments;
+    private int[][] postingFrequencies;
+
+    /**
+     * SubjectTextIndex constructor. The stored index is loaded on first use.
+     * @param context Desired context.
+     */
+    public SubjectTextIndex(Context context) {
+        this.context = context;
+        this.fileUtils = new FileUtils(context, null);
+    }
+
+    /**
+     * Indexes again the given subjects, or removes them if their file no longer exists.
+     * Meant to be called with the subjects returned by CatalogueManifest.commit after each sync.
+     * @param subjectCodes UPC codes of the changed subjects.
+     */
+    public synchronized void update(Collection<String> subjectCodes) {
+        if (!this.loaded) {
+            // Loading already checks every subject file
+            load();
+            return;
+        }
+
+        boolean changed = false;
+        for (String subjectCode : subjectCodes) {
+            changed |= refresh(subjectCode);
+        }
+        if (changed) {
+            this.terms = null;
+            write();
+        }
+    }
+
+    /**
+     * Searches the subjects whose text matches the query, ranked with BM25. Words not found as such
+     * are expanded to every indexed word starting with them, scored together as a single word, so
+     * partial words also match.
+     * @param query Text written by the user.
+     * @param limit Maximum number of subjects returned.
+     * @return List of subject UPC codes, best match first.
+     */
+    public synchronized List<String> search(String query, int limit) {
+        if (!this.loaded) {
+            load();
+        }
+        if (this.terms == null) {
+            buildInvertedIndex();
+        }
+
+        final double[] scores = new double[this.documentCodes.length];
+        for (String token : new HashSet<>(SearchTokenizer.tokenize(query))) {
+            int position = Arrays.binarySearch(this.terms, token);
+            if (position >= 0) {
+                scoreTerm(position, scores);
+                continue;
+            }
+            int first = -position - 1;
+            int last = first;
+            while (last < this.terms.length && this.terms[last].startsWith(token)) {
+                last++;
+            }
+            if (last > first) {
+                scoreTermRange(first, last, scores);
+            }
+        }
+
+        List<Integer> matches = new ArrayList<>();
+        for (int i = 0; i < scores.length; i++) {
+            if (scores[i] > 0) {
+                matches.add(i);
+            }
+        }
+        Collections.sort(matches, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return Double.compare(scores[rhs], scores[lhs]);
+            }
+        });
+
+        List<String> results = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            results.add(this.documentCodes[matches.get(i)]);
+        }
+        return results;
+    }
+
+    private void scoreTerm(int term, double[] scores) {
+        scorePostings(this.postingDocuments[term], this.postingFrequencies[term], this.postingDocuments[term].length, scores);
+    }
+
+    /**
+     * Scores the words in the range as one word, its frequency in each subject being the sum of theirs.
+     * @param first Position of the first word.
+     * @param last Position after the last word.
+     * @param scores Scores of each subject, increased with the match.
+     */
+    private void scoreTermRange(int first, int last, double[] scores) {
+        int[] documentFrequencies = new int[this.documentCodes.length];
+        int[] documents = new int[this.documentCodes.length];
+        int count = 0;
+        for (int term = first; term < last; term++) {
+            int[] termDocuments = this.postingDocuments[term];
+            int[] termFrequencies = this.postingFrequencies[term];
+            for (int i = 0; i < termDocuments.length; i++) {
+                if (documentFrequencies[termDocuments[i]] == 0) {
+                    documents[count++] = termDocuments[i];
+                }
+                documentFrequencies[termDocuments[i]] += termFrequencies[i];
+            }
+        }
+
+        int[] frequencies = new int[count];
+        for (int i = 0; i < count; i++) {
+            frequencies[i] = documentFrequencies[documents[i]];
+        }
+        scorePostings(documents, frequencies, count, scores);
+    }
+
+    private void scorePostings(int[] documents, int[] frequencies, int count, double[] scores) {
+        double idf = Math.log(1 + (this.documentCodes.length - count + 0.5) / (count + 0.5));
+        for (int i = 0; i < count; i++) {
+            double frequency = frequencies[i];
+            double normalization = K1 * (1 - B + B * this.documentLengths[documents[i]] / this.averageLength);
+            scores[documents[i]] += idf * frequency * (K1 + 1) / (frequency + normalization);
+        }
+    }
+
+    private void buildInvertedIndex() {
+        List<String> codes = new ArrayList<>(this.documents.keySet());
+        Collections.sort(codes);
+        this.documentCodes = codes.toArray(new String[codes.size()]);
+        this.documentLengths = new int[this.documentCodes.length];
+
+        long totalLength = 0;
+        Map<String, List<int[]>> termPostings = new HashMap<>();
+        for (int i = 0; i < this.documentCodes.length; i++) {
+            Document document = this.documents.get(this.documentCodes[i]);
+            this.documentLengths[i] = document.length;
+            totalLength += document.length;
+            for (int j = 0; j < document.terms.length; j++) {
+                List<int[]> postings = termPostings.get(document.terms[j]);
+                if (postings == null) {
+                    postings = new ArrayList<>();
+                    termPostings.put(document.terms[j], postings);
+                }
+                postings.add(new int[]{i, document.frequencies[j]});
+            }
+        }
+        this.averageLength = this.documentCodes.length > 0 ? Math.max(1.0, (double) totalLength / this.documentCodes.length) : 1.0;
+
+        this.terms = termPostings.keySet().toArray(new String[termPostings.size()]);
+        Arrays.sort(this.terms);
+        this.postingDocuments = new int[this.terms.length][];
+        this.postingFrequencies = new int[this.terms.length][];
+        for (int i = 0; i < this.terms.length; i++) {
+            List<int[]> postings = termPostings.get(this.terms[i]);
+            this.postingDocuments[i] = new int[postings.size()];
+            this.postingFrequencies[i] = new int[postings.size()];
+            for (int j = 0; j < postings.size(); j++) {
+                this.postingDocuments[i][j] = postings.get(j)[0];
+                this.postingFrequencies[i][j] = postings.get(j)[1];
+            }
+        }
+    }
+
+    /**
+     * Reads the stored index and brings it up to date with the subject files on disk.
+     */
+    private void load() {
+        long startTime = SystemClock.elapsedRealtime();
+        this.loaded = true;
+        boolean changed = !read();
+
+        Set<String> subjectCodes = new HashSet<>();
+        for (String fileName : this.fileUtils.listFiles(CatalogueManifest.SUBJECT_PREFIX)) {
+            String subjectCode = CatalogueManifest.getSubjectCode(fileName);
+            if (subjectCode != null) {
+                subjectCodes.add(subjectCode);
+            }
+        }
+        subjectCodes.addAll(this.documents.keySet());
+        for (String subjectCode : subjectCodes) {
+            changed |= refresh(subjectCode);
+        }
+
+        if (changed) {
+            write();
+        }
+        this.terms = null;
+        Log.d(Constants.TAG_FILE, "Subject text index loaded in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+    }
+
+    /**
+     * Indexes a subject again if its file has changed since it was indexed.
+     * @param subjectCode Subject UPC code.
+     * @return Boolean value representing if the index has changed.
+     */
+    private boolean refresh(String subjectCode) {
+        String fileName = CatalogueManifest.getSubjectFile(subjectCode);
+        File file = new File(this.context.getFilesDir(), fileName);
+        Document document = this.documents.get(subjectCode);
+        if (!file.exists()) {
+            return this.documents.remove(subjectCode) != null;
+        }
+        if (document != null && document.fileLength == file.length() && document.fileModified == file.lastModified()) {
+            return false;
+        }
+
+        Document indexed = index(fileName);
+        if (indexed == null) {
+            return this.documents.remove(subjectCode) != null;
+        }
+        indexed.fileLength = file.length();
+        indexed.fileModified = file.lastModified();
+        this.documents.put(subjectCode, indexed);
+        return true;
+    }
+
+    private Document index(String fileName) {
+        String subjectData = this.fileUtils.readFileToString(fileName);
+        if (subjectData == null) {
+            return null;
+        }
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = 0;
+        try {
+            JSONObject subjectJSONObject = new JSONObject(subjectData);
+            length += addText(frequencies, subjectJSONObject.optString("nom"), NAME_WEIGHT);
+
+            JSONArray teachersJSONArray = subjectJSONObject.optJSONArray("professors");
+            if (teachersJSONArray != null) {
+                for (int i = 0; i < teachersJSONArray.length(); i++) {
+                    length += addText(frequencies, teachersJSONArray.getJSONObject(i).optString("nom"), TEACHERS_WEIGHT);
+                }
+            }
+
+            String objectives = subjectJSONObject.optString("objectius");
+            if (!objectives.equals("null")) {
+                length += addText(frequencies, objectives, 1);
+            }
+
+            JSONArray descriptionsJSONArray = subjectJSONObject.optJSONArray("descripcio");
+            if (descriptionsJSONArray != null) {
+                for (int i = 0; i < descriptionsJSONArray.length(); i++) {
+                    length += addText(frequencies, descriptionsJSONArray.getString(i), 1);
+                }
+            }
+
+            JSONArray bibliographyJSONArray = subjectJSONObject.optJSONArray("bibliografia");
+            if (bibliographyJSONArray != null) {
+                for (int i = 0; i < bibliographyJSONArray.length(); i++) {
+                    length += addText(frequencies, bibliographyJSONArray.getJSONObject(i).optString("text"), 1);
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(Constants.TAG_JSON, "JSON parse failed: " + e.toString());
+            return null;
+        }
+
+        Document document = new Document();
+        document.length = length;
+        document.terms = new String[frequencies.size()];
+        document.frequencies = new int[frequencies.size()];
+        int position = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            document.terms[position] = entry.getKey();
+            document.frequencies[position] = entry.getValue();
+            position++;
+        }
+        return document;
+    }
+
+    /**
+     * Counts the words of the text, which may hold HTML markup.
+     * @return Number of words added, already multiplied by the weight.
+     */
+    private static int addText(Map<String, Integer> frequencies, String text, int weight) {
+        List<String> tokens = SearchTokenizer.tokenize(text.replaceAll("<[^>]*>|&[a-zA-Z]+;", " "));
+        for (String token : tokens) {
+            Integer frequency = frequencies.get(token);
+            frequencies.put(token, frequency == null ? weight : frequency + weight);
+        }
+        return tokens.size() * weight;
+    }
+
+    /**
+     * Reads the stored documents.
+     * @return Boolean value representing if the stored index could be used.
+     */
+    private boolean read() {
+        File file = new File(this.context.getFilesDir(), INDEX_FILE);
+        byte[] data = new byte[(int) file.length()];
+        try {
+            FileInputStream fileInputStream = new FileInputStream(file);
+            try {
+                new DataInputStream(fileInputStream).readFully(data);
+            } finally {
+                fileInputStream.close();
+            }
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Subject text index read failed: " + e.toString());
+            return false;
+        }
+
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return false;
+            }
+
+            String[] dictionary = new String[input.readInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = input.readUTF();
+            }
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String subjectCode = input.readUTF();
+                Document document = new Document();
+                document.fileLength = input.readLong();
+                document.fileModified = input.readLong();
+                document.length = input.readInt();
+                document.terms = new String[input.readInt()];
+                document.frequencies = new int[document.terms.length];
+                for (int j = 0; j < document.terms.length; j++) {
+                    document.terms[j] = dictionary[input.readInt()];
+                    document.frequencies[j] = input.readInt();
+                }
+                this.documents.put(subjectCode, document);
+            }
+            return true;
+        } catch (EOFException e) {
+            Log.e(Constants.TAG_FILE, "Subject text index truncated: " + e.toString());
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Subject text index read failed: " + e.toString());
+        }
+
+        this.documents.clear();
+        return false;
+    }
+
+    /**
+     * Stores the documents, with the words written once in a dictionary and referenced by position.
+     */
+    private void write() {
+        File file = new File(this.context.getFilesDir(), INDEX_FILE);
+        try {
+            HashMap<String, Integer> dictionary = new HashMap<>();
+            List<String> dictionaryTerms = new ArrayList<>();
+            for (Document document : this.documents.values()) {
+                for (String term : document.terms) {
+                    if (!dictionary.containsKey(term)) {
+                        dictionary.put(term, dictionaryTerms.size());
+                        dictionaryTerms.add(term);
+                    }
+                }
+            }
+
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(index);
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(dictionaryTerms.size());
+            for (String term : dictionaryTerms) {
+                output.writeUTF(term);
+            }
+
+            output.writeInt(this.documents.size());
+            for (Map.Entry<String, Document> entry : this.documents.entrySet()) {
+                Document document = entry.getValue();
+                output.writeUTF(entry.getKey());
+                output.writeLong(document.fileLength);
+                output.writeLong(document.fileModified);
+                output.writeInt(document.length);
+                output.writeInt(document.terms.length);
+                for (int i = 0; i < document.terms.length; i++) {
+                    output.writeInt(dictionary.get(document.terms[i]));
+                    output.writeInt(document.frequencies[i]);
+                }
+            }
+
+            new DurableFile(file).write(index.toByteArray());
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Subject text index write failed: " + e.toString());
+        }
+    }
+
+    private static class Document {
+
+        private long fileLength;
+        private long fileModified;
+        private int length;
+        private String[] terms;
+        private int[] frequencies;
+
+    }
+
+}
@@ -0,0 +1,256 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class SyncEngine {
+
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    private static final long TIMEOUT_CHECK_INTERVAL = 250;
+    // Time a cancelled worker may need to commit a file it had already downloaded
+    private static final long TERMINATION_MARGIN = 2000;
+
+    private FileUtils fileUtils;
+    private int poolSize;
+    private OnProgressListener onProgressListener;
+    private int timeout;
+
+    private List<Request> pendingRequests = new ArrayList<>();
+    private int completed;
+    private int total;
+
+    /**
+     * SyncEngine constructor.
+     * @param fileUtils FileUtils object used to fetch and store every resource.
+     * @param poolSize Maximum number of resources fetched at the same time.
+     */
+    public SyncEngine(FileUtils fileUtils, int poolSize) {
+        this.fileUtils = fileUtils;
+        this.poolSize = Math.max(1, poolSize);
+    }
+
+    /**
+     * Sets the listener notified each time a resource has been fetched.
+     * @param onProgressListener Listener to be called from the thread that runs the engine.
+     */
+    public void setOnProgressListener(OnProgressListener onProgressListener) {
+        this.onProgressListener = onProgressListener;
+    }
+
+    /**
+     * Sets how long a single resource may take once it has started. The same time bounds the connection
+     * and each read. Slower resources are cancelled, counted as failed without affecting the others, and
+     * never replace their stored file.
+     * @param timeout Maximum time in milliseconds, 0 to use the connection defaults and wait forever.
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Adds a resource to be fetched in the next run.
+     * @param url URL from which extract the data.
+     * @param outputFile Name of file where the data will be stored.
+     * @param required If true, a failure of this resource aborts the whole run.
+     * @return Request object that will hold the fetch result.
+     */
+    public Request enqueue(String url, String outputFile, boolean required) {
+        Request request = new Request(url, outputFile, required);
+        this.pendingRequests.add(request);
+        this.total++;
+        return request;
+    }
+
+    /**
+     * Fetches all the enqueued resources concurrently and blocks until they are done.
+     * As soon as a required resource fails the remaining ones are cancelled. Cancelled and timed out
+     * resources are waited for before returning, so no file is still being replaced when the caller
+     * reads them.
+     * @return Boolean value representing if all the required resources have been fetched.
+     */
+    public boolean run() {
+        List<Request> requests = this.pendingRequests;
+        this.pendingRequests = new ArrayList<>();
+        if (requests.isEmpty()) {
+            return true;
+        }
+
+        long wireBytes = TransferStats.getWireBytes();
+        long decodedBytes = TransferStats.getDecodedBytes();
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(this.poolSize, requests.size()));
+        CompletionService<Request> completionService = new ExecutorCompletionService<>(executorService);
+        List<Future<Request>> futures = new ArrayList<>();
+        for (final Request request : requests) {
+            futures.add(completionService.submit(new Callable<Request>() {
+                @Override
+                public Request call() throws Exception {
+                    request.startTime = System.currentTimeMillis();
+                    int statusCode = fileUtils.fetchAndStoreFile(request.url, request.outputFile, timeout);
+                    // A timed out request has already been reported as failed
+                    return request.finish(statusCode) ? request : null;
+                }
+            }));
+        }
+
+        try {
+            int remaining = requests.size();
+            while (remaining > 0) {
+                Future<Request> future = this.timeout > 0
+                        ? completionService.poll(TIMEOUT_CHECK_INTERVAL, TimeUnit.MILLISECONDS)
+                        : completionService.take();
+
+                // Timed out requests have already been counted when they were cancelled
+                if (future != null && !future.isCancelled() && future.get() != null) {
+                    remaining--;
+                    if (!onRequestDone(future.get())) {
+                        return false;
+                    }
+                }
+
+                if (this.timeout > 0) {
+                    long now = System.currentTimeMillis();
+                    for (int i = 0; i < futures.size(); i++) {
+                        Request request = requests.get(i);
+                        if (request.startTime > 0 && now - request.startTime > this.timeout && request.finish(-1)) {
+                            Log.e(Constants.TAG_FILE, "Resource timed out: " + request.getUrl());
+                            futures.get(i).cancel(true);
+                            remaining--;
+                            if (!onRequestDone(request)) {
+                                return false;
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Log.e(Constants.TAG_FILE, "Sync task failed: " + e.toString());
+            return false;
+        } finally {
+            executorService.shutdownNow();
+            // A cancelled worker stops at its next read, which the connection timeouts bound
+            long terminationTimeout = (this.timeout > 0 ? Math.min(this.timeout, UrlConnectionTransport.DEFAULT_READ_TIMEOUT)
+                    : UrlConnectionTransport.DEFAULT_READ_TIMEOUT) + TERMINATION_MARGIN;
+            try {
+                if (!executorService.awaitTermination(terminationTimeout, TimeUnit.MILLISECONDS)) {
+                    Log.e(Constants.TAG_FILE, "Sync workers still running after " + terminationTimeout + " ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Log.d(Constants.TAG_FILE, "Synced " + requests.size() + " resources, " + (TransferStats.getWireBytes() - wireBytes)
+                    + " bytes on the wire for " + (TransferStats.getDecodedBytes() - decodedBytes) + " decoded");
+        }
+
+        return true;
+    }
+
+    private boolean onRequestDone(Request request) {
+        this.completed++;
+        if (this.onProgressListener != null) {
+            this.onProgressListener.onProgress(this.completed, this.total);
+        }
+
+        if (request.isRequired() && request.isFailed()) {
+            Log.e(Constants.TAG_FILE, "Required resource failed: " + request.getUrl());
+            return false;
+        }
+        return true;
+    }
+
+    public interface OnProgressListener {
+
+        /**
+         * Called each time a resource has been fetched.
+         * @param completed Number of resources fetched so far.
+         * @param total Number of resources enqueued so far.
+         */
+        void onProgress(int completed, int total);
+
+    }
+
+    public static class Request {
+
+        private String url;
+        private String outputFile;
+        private boolean required;
+        private volatile Integer statusCode;
+        private volatile long startTime;
+        private boolean finished;
+
+        Request(String url, String outputFile, boolean required) {
+            this.url = url;
+            this.outputFile = outputFile;
+            this.required = required;
+        }
+
+        /**
+         * Sets the result of the fetch, unless it has already been set.
+         * @param statusCode Status code of the fetch, -1 if it failed or timed out.
+         * @return Boolean value representing if this call set the result.
+         */
+        synchronized boolean finish(int statusCode) {
+            if (this.finished) {
+                return false;
+            }
+            this.finished = true;
+            this.statusCode = statusCode;
+            return true;
+        }
+
+        /**
+         * Gets the resource url.
+         * @return String object with the url.
+         */
+        public String getUrl() {
+            return this.url;
+        }
+
+        /**
+         * Gets the name of the file where the resource is stored.
+         * @return String object with the file name.
+         */
+        public String getOutputFile() {
+            return this.outputFile;
+        }
+
+        /**
+         * Checks if a failure of this resource aborts the run.
+         * @return Boolean value representing if the resource is required.
+         */
+        public boolean isRequired() {
+            return this.required;
+        }
+
+        /**
+         * Gets the status code of the fetch.
+         * @return Integer value with the status code, -1 if any error occurred or it has not been fetched.
+         */
+        public int getStatusCode() {
+            return this.statusCode == null ? -1 : this.statusCode;
+        }
+
+        /**
+         * Checks if the resource has been fetched without success. Cancelled resources are not failed.
+         * @return Boolean value representing if the fetch failed.
+         */
+        public boolean isFailed() {
+            return this.statusCode != null && !FileUtils.isSuccessful(this.statusCode);
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.upc.fib.racopocket.Utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide counters of the HTTP traffic, comparing the bytes received on the wire with the
+ * bytes they decode to, so the saving of compression can be measured.
+ */
+public class TransferStats {
+
+    private static final AtomicLong REQUESTS = new AtomicLong();
+    private static final AtomicLong WIRE_BYTES = new AtomicLong();
+    private static final AtomicLong DECODED_BYTES = new AtomicLong();
+
+    private TransferStats() {
+    }
+
+    /**
+     * Counts a new request.
+     */
+    public static void addRequest() {
+        REQUESTS.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of requests performed so far.
+     * @return Long value with the number of requests.
+     */
+    public static long getRequests() {
+        return REQUESTS.get();
+    }
+
+    /**
+     * Gets the number of response body bytes received on the wire so far, before decompression.
+     * @return Long value with the number of bytes.
+     */
+    public static long getWireBytes() {
+        return WIRE_BYTES.get();
+    }
+
+    /**
+     * Gets the number of response body bytes read so far, after decompression.
+     * @return Long value with the number of bytes.
+     */
+    public static long getDecodedBytes() {
+        return DECODED_BYTES.get();
+    }
+
+    /**
+     * Wraps a response body as received from the connection.
+     * @param inputStream Raw body stream.
+     * @return Stream counting the bytes read as wire bytes.
+     */
+    public static InputStream countWire(InputStream inputStream) {
+        return new CountingInputStream(inputStream, WIRE_BYTES);
+    }
+
+    /**
+     * Wraps a decompressed response body.
+     * @param inputStream Decoded body stream.
+     * @return Stream counting the bytes read as decoded bytes.
+     */
+    public static InputStream countDecoded(InputStream inputStream) {
+        return new CountingInputStream(inputStream, DECODED_BYTES);
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private AtomicLong counter;
+
+        CountingInputStream(InputStream inputStream, AtomicLong counter) {
+            super(inputStream);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                this.counter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                this.counter.addAndGet(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            this.counter.addAndGet(skipped);
+            return skipped;
+        }
+
+    }
+
+}
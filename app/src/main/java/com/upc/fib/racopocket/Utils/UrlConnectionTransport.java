@@ -0,0 +1,130 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import oauth.signpost.OAuthConsumer;
+import oauth.signpost.exception.OAuthException;
+
+/**
+ * HttpTransport backed by HttpURLConnection. Connections are kept alive and pooled by the platform
+ * as long as each response body is read and closed, so consecutive requests to the same host skip
+ * the TLS handshake. Responses are requested gzipped and decompressed here.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 15000;
+    public static final int DEFAULT_READ_TIMEOUT = 20000;
+
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    private int connectTimeout;
+    private int readTimeout;
+
+    /**
+     * UrlConnectionTransport constructor with the default timeouts.
+     */
+    public UrlConnectionTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * UrlConnectionTransport constructor.
+     * @param connectTimeout Maximum time in milliseconds to establish a connection.
+     * @param readTimeout Maximum time in milliseconds to wait for data once connected.
+     */
+    public UrlConnectionTransport(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers, @Nullable OAuthConsumer consumer, int timeout) throws IOException, OAuthException {
+        HttpURLConnection urlConnection = (HttpURLConnection) new URL(url).openConnection();
+        urlConnection.setConnectTimeout(timeout > 0 ? Math.min(timeout, this.connectTimeout) : this.connectTimeout);
+        urlConnection.setReadTimeout(timeout > 0 ? Math.min(timeout, this.readTimeout) : this.readTimeout);
+        // Asking for gzip explicitly disables the transparent decompression, so the wire size can be counted
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            urlConnection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        boolean connected = false;
+        try {
+            if (consumer != null) {
+                // Signpost consumers keep per-request state, so concurrent requests must sign one at a time
+                synchronized (consumer) {
+                    consumer.sign(urlConnection);
+                }
+            }
+
+            TransferStats.addRequest();
+            Response response = new UrlConnectionResponse(urlConnection, urlConnection.getResponseCode());
+            connected = true;
+            return response;
+        } finally {
+            if (!connected) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    private static class UrlConnectionResponse implements Response {
+
+        private HttpURLConnection urlConnection;
+        private int statusCode;
+        private InputStream body;
+
+        UrlConnectionResponse(HttpURLConnection urlConnection, int statusCode) {
+            this.urlConnection = urlConnection;
+            this.statusCode = statusCode;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return this.statusCode;
+        }
+
+        @Nullable
+        @Override
+        public String getHeader(String name) {
+            return this.urlConnection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (this.body == null) {
+                InputStream inputStream = TransferStats.countWire(this.urlConnection.getInputStream());
+                if ("gzip".equalsIgnoreCase(this.urlConnection.getContentEncoding())) {
+                    inputStream = new GZIPInputStream(inputStream, GZIP_BUFFER_SIZE);
+                }
+                this.body = TransferStats.countDecoded(inputStream);
+            }
+            return this.body;
+        }
+
+        @Override
+        public void close() {
+            // Closing the body, instead of disconnecting, is what hands the connection back to the pool
+            try {
+                InputStream inputStream = this.body;
+                if (inputStream == null) {
+                    inputStream = this.statusCode >= HttpURLConnection.HTTP_BAD_REQUEST ? this.urlConnection.getErrorStream() : this.urlConnection.getInputStream();
+                }
+                if (inputStream != null) {
+                    inputStream.close();
+                }
+            } catch (IOException e) {
+                this.urlConnection.disconnect();
+            }
+        }
+
+    }
+
+}
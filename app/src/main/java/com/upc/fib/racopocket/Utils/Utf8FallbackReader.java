@@ -0,0 +1,163 @@
+package com.upc.fib.racopocket.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Decodes a byte stream as UTF-8, falling back to ISO-8859-15 for each byte that is not part of a
+ * valid UTF-8 sequence. RACO feeds declare ISO-8859-15 but usually contain UTF-8, so the declared
+ * encoding cannot be trusted.
+ */
+public class Utf8FallbackReader extends Reader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private InputStream inputStream;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+    private int pendingChar = -1;
+
+    /**
+     * Utf8FallbackReader constructor.
+     * @param inputStream Stream to be decoded, closed along with the reader.
+     */
+    public Utf8FallbackReader(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        if (this.pendingChar != -1) {
+            chars[offset + count++] = (char) this.pendingChar;
+            this.pendingChar = -1;
+        }
+
+        while (count < length && fill(1) > 0) {
+            int first = this.buffer[this.position] & 0xFF;
+            if (first < 0x80) {
+                chars[offset + count++] = (char) first;
+                this.position++;
+                continue;
+            }
+
+            int codePoint = decodeSequence(first);
+            if (codePoint < 0) {
+                chars[offset + count++] = fallback(first);
+                this.position++;
+            } else if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[offset + count++] = (char) codePoint;
+            } else {
+                char[] surrogates = Character.toChars(codePoint);
+                chars[offset + count++] = surrogates[0];
+                if (count < length) {
+                    chars[offset + count++] = surrogates[1];
+                } else {
+                    this.pendingChar = surrogates[1];
+                }
+            }
+        }
+
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.inputStream.close();
+    }
+
+    /**
+     * Decodes the UTF-8 sequence starting at the current position and consumes it if valid.
+     * @param first First byte of the sequence.
+     * @return Decoded code point, -1 if the bytes are not a valid UTF-8 sequence.
+     */
+    private int decodeSequence(int first) throws IOException {
+        int extraBytes;
+        int codePoint;
+        int minimum;
+        if (first >= 0xC2 && first <= 0xDF) {
+            extraBytes = 1;
+            codePoint = first & 0x1F;
+            minimum = 0x80;
+        } else if (first >= 0xE0 && first <= 0xEF) {
+            extraBytes = 2;
+            codePoint = first & 0x0F;
+            minimum = 0x800;
+        } else if (first >= 0xF0 && first <= 0xF4) {
+            extraBytes = 3;
+            codePoint = first & 0x07;
+            minimum = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        } else {
+            return -1;
+        }
+
+        if (fill(extraBytes + 1) < extraBytes + 1) {
+            return -1;
+        }
+        for (int i = 1; i <= extraBytes; i++) {
+            int next = this.buffer[this.position + i] & 0xFF;
+            if ((next & 0xC0) != 0x80) {
+                return -1;
+            }
+            codePoint = (codePoint << 6) | (next & 0x3F);
+        }
+        if (codePoint < minimum || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return -1;
+        }
+
+        this.position += extraBytes + 1;
+        return codePoint;
+    }
+
+    /**
+     * Maps a single byte to its ISO-8859-15 character.
+     * @param b Byte value, between 0x80 and 0xFF.
+     * @return Decoded character.
+     */
+    private static char fallback(int b) {
+        switch (b) {
+            case 0xA4: return '\u20AC';
+            case 0xA6: return '\u0160';
+            case 0xA8: return '\u0161';
+            case 0xB4: return '\u017D';
+            case 0xB8: return '\u017E';
+            case 0xBC: return '\u0152';
+            case 0xBD: return '\u0153';
+            case 0xBE: return '\u0178';
+            default: return (char) b;
+        }
+    }
+
+    /**
+     * Makes sure the buffer holds at least the given number of unread bytes, unless the stream ends.
+     * @param required Number of bytes needed.
+     * @return Number of unread bytes available in the buffer.
+     */
+    private int fill(int required) throws IOException {
+        if (this.limit - this.position >= required || this.endOfStream) {
+            return this.limit - this.position;
+        }
+
+        System.arraycopy(this.buffer, this.position, this.buffer, 0, this.limit - this.position);
+        this.limit -= this.position;
+        this.position = 0;
+        while (this.limit < required) {
+            int count = this.inputStream.read(this.buffer, this.limit, this.buffer.length - this.limit);
+            if (count == -1) {
+                this.endOfStream = true;
+                break;
+            }
+            this.limit += count;
+        }
+        return this.limit - this.position;
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+public class ValidatorStore {
+
+    private static final String SUFFIX = ".validators";
+
+    private Context context;
+
+    /**
+     * ValidatorStore constructor.
+     * @param context Desired context.
+     */
+    public ValidatorStore(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Recovers the cache validators stored next to a file, if they were obtained from the same url.
+     * @param outputFile Name of the cached file.
+     * @param url URL the file is going to be fetched from.
+     * @return Validator object with the stored ETag and Last-Modified values, null if there is none.
+     */
+    @Nullable
+    public Validator load(String outputFile, String url) {
+        try {
+            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(this.context.openFileInput(outputFile + SUFFIX), "UTF-8"));
+            try {
+                String storedUrl = bufferedReader.readLine();
+                if (!url.equals(storedUrl)) {
+                    return null;
+                }
+                Validator validator = new Validator(emptyToNull(bufferedReader.readLine()), emptyToNull(bufferedReader.readLine()));
+                return validator.isEmpty() ? null : validator;
+            } finally {
+                bufferedReader.close();
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Validators read failed: " + e.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Stores the cache validators of a file, or removes them if the server did not send any.
+     * @param outputFile Name of the cached file.
+     * @param url URL the file has been fetched from.
+     * @param validator Validator received along with the file content.
+     */
+    public void store(String outputFile, String url, Validator validator) {
+        if (validator.isEmpty()) {
+            remove(outputFile);
+            return;
+        }
+
+        try {
+            String data = url + "\n" + nullToEmpty(validator.getETag()) + "\n" + nullToEmpty(validator.getLastModified()) + "\n";
+            new DurableFile(new File(this.context.getFilesDir(), outputFile + SUFFIX)).write(data.getBytes("UTF-8"));
+        } catch (IOException e) {
+            Log.e(Constants.TAG_FILE, "Validators write failed: " + e.toString());
+        }
+    }
+
+    /**
+     * Removes the cache validators of a file.
+     * @param outputFile Name of the cached file.
+     */
+    public void remove(String outputFile) {
+        File file = new File(this.context.getFilesDir(), outputFile + SUFFIX);
+        file.delete();
+    }
+
+    private static String emptyToNull(String value) {
+        return (value == null || value.length() == 0) ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    public static class Validator {
+
+        private String eTag;
+        private String lastModified;
+
+        /**
+         * Validator constructor.
+         * @param eTag ETag header value, null if absent.
+         * @param lastModified Last-Modified header value, null if absent.
+         */
+        public Validator(String eTag, String lastModified) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Gets the ETag value, sent back as If-None-Match.
+         * @return String object with the ETag, null if absent.
+         */
+        public String getETag() {
+            return this.eTag;
+        }
+
+        /**
+         * Gets the Last-Modified value, sent back as If-Modified-Since.
+         * @return String object with the date, null if absent.
+         */
+        public String getLastModified() {
+            return this.lastModified;
+        }
+
+        /**
+         * Checks if there is any validator to send.
+         * @return Boolean value representing if both validators are absent.
+         */
+        public boolean isEmpty() {
+            return this.eTag == null && this.lastModified == null;
+        }
+
+    }
+
+}
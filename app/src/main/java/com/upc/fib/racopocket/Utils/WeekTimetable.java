@@ -0,0 +1,143 @@
+package com.upc.fib.racopocket.Utils;
+
+import android.graphics.Color;
+import android.util.Log;
+
+import com.upc.fib.racopocket.Models.TimetableSubjectModel;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weekly timetable compiled from horari-setmanal.json into ready to display rows, sorted by start
+ * time and with colors resolved. The compiled week is stored in the DataSnapshot.
+ */
+public class WeekTimetable {
+
+    public static final String SOURCE_FILE = "horari-setmanal.json";
+    public static final int DAYS = 5;
+
+    private FileUtils fileUtils;
+
+    /**
+     * WeekTimetable constructor.
+     * @param fileUtils FileUtils object used to read the source file.
+     */
+    public WeekTimetable(FileUtils fileUtils) {
+        this.fileUtils = fileUtils;
+    }
+
+    /**
+     * Compiles the week from the source file.
+     * @param subjectColors Color of each subject.
+     * @return Unmodifiable list with the classes of each day, from monday to friday.
+     */
+    public List<List<TimetableSubjectModel>> compile(Map<String, Integer> subjectColors) {
+        List<List<TimetableSubjectModel>> week = new ArrayList<>();
+        for (int i = 0; i < DAYS; i++) {
+            week.add(new ArrayList<TimetableSubjectModel>());
+        }
+
+        String timetableData = this.fileUtils.readFileToString(SOURCE_FILE);
+        if (timetableData != null) {
+            try {
+                JSONArray timetableJSONArray = new JSONArray(timetableData);
+                for (int i = 0; i < timetableJSONArray.length(); i++) {
+                    JSONObject currentClass = timetableJSONArray.getJSONObject(i);
+                    int day = currentClass.getInt("Dia") - 1;
+                    if (day < 0 || day >= DAYS) {
+                        continue;
+                    }
+
+                    String subject = currentClass.getString("Assig");
+                    String group = currentClass.getString("Grup") + currentClass.getString("Tipus");
+                    String startTime = currentClass.getString("HoraInici");
+                    String classroom = currentClass.getString("Aules").replace("[", "").replace("]", "").replace("\"", "").replace(",", ", ");
+                    Integer color = subjectColors.get(subject);
+                    week.get(day).add(new TimetableSubjectModel(subject, group, startTime + "-" + currentClass.getString("HoraFi") + "h", classroom,
+                            parseMinutes(startTime), color == null ? Color.WHITE : color));
+                }
+            } catch (JSONException e) {
+                Log.e(Constants.TAG_JSON, "JSON parse failed: " + e.toString());
+            }
+        }
+
+        for (List<TimetableSubjectModel> day : week) {
+            Collections.sort(day, new Comparator<TimetableSubjectModel>() {
+                @Override
+                public int compare(TimetableSubjectModel lhs, TimetableSubjectModel rhs) {
+                    return lhs.getStartMinutes() - rhs.getStartMinutes();
+                }
+            });
+        }
+        return unmodifiableWeek(week);
+    }
+
+    private static int parseMinutes(String time) {
+        int separator = time.indexOf(':');
+        try {
+            if (separator < 0) {
+                return Integer.parseInt(time.trim()) * 60;
+            }
+            return Integer.parseInt(time.substring(0, separator).trim()) * 60 + Integer.parseInt(time.substring(separator + 1).trim());
+        } catch (NumberFormatException e) {
+            Log.e(Constants.TAG_JSON, "Time parse failed: " + e.toString());
+            return 0;
+        }
+    }
+
+    /**
+     * Reads a week written by writeWeek.
+     * @param input Stream positioned at the week.
+     * @return Unmodifiable list with the classes of each day.
+     */
+    public static List<List<TimetableSubjectModel>> readWeek(DataInputStream input) throws IOException {
+        List<List<TimetableSubjectModel>> week = new ArrayList<>();
+        for (int i = 0; i < DAYS; i++) {
+            int count = input.readInt();
+            List<TimetableSubjectModel> day = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                day.add(new TimetableSubjectModel(input.readUTF(), input.readUTF(), input.readUTF(), input.readUTF(), input.readInt(), input.readInt()));
+            }
+            week.add(day);
+        }
+        return unmodifiableWeek(week);
+    }
+
+    /**
+     * Writes a compiled week.
+     * @param output Stream where the week will be written.
+     * @param week Week as returned by compile.
+     */
+    public static void writeWeek(DataOutputStream output, List<List<TimetableSubjectModel>> week) throws IOException {
+        for (List<TimetableSubjectModel> day : week) {
+            output.writeInt(day.size());
+            for (TimetableSubjectModel timetableSubject : day) {
+                output.writeUTF(timetableSubject.getName());
+                output.writeUTF(timetableSubject.getGroup());
+                output.writeUTF(timetableSubject.getStartTime());
+                output.writeUTF(timetableSubject.getClassroom());
+                output.writeInt(timetableSubject.getStartMinutes());
+                output.writeInt(timetableSubject.getColor());
+            }
+        }
+    }
+
+    private static List<List<TimetableSubjectModel>> unmodifiableWeek(List<List<TimetableSubjectModel>> week) {
+        for (int i = 0; i < week.size(); i++) {
+            week.set(i, Collections.unmodifiableList(week.get(i)));
+        }
+        return Collections.unmodifiableList(week);
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.upc.fib.racopocket.Utils;
+
+import com.upc.fib.racopocket.Models.EventModel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class FileUtilsTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final TimeZone MADRID = TimeZone.getTimeZone("Europe/Madrid");
+
+    private TimeZone defaultTimeZone;
+
+    @Before
+    public void setUp() {
+        defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @Test
+    public void readEvents_unfoldsFoldedLines() throws Exception {
+        List<EventModel> events = readEvents(Long.MIN_VALUE, Long.MAX_VALUE,
+                "BEGIN:VEVENT",
+                "SUMMARY:Examen final ",
+                " de PRO1",
+                "\tgrup 10",
+                "DTSTART:20261020T080000Z",
+                "END:VEVENT");
+
+        assertEquals(1, events.size());
+        assertEquals("Examen final de PRO1grup 10", events.get(0).getSummary());
+    }
+
+    @Test
+    public void readEvents_ignoresNestedComponents() throws Exception {
+        List<EventModel> events = readEvents(Long.MIN_VALUE, Long.MAX_VALUE,
+                "BEGIN:VEVENT",
+                "SUMMARY:Entrega IDI",
+                "BEGIN:VALARM",
+                "SUMMARY:Recordatori",
+                "DTSTART:20300101T000000Z",
+                "END:VALARM",
+                "DTSTART:20261020T080000Z",
+                "END:VEVENT");
+
+        assertEquals(1, events.size());
+        assertEquals("Entrega IDI", events.get(0).getSummary());
+        assertEquals(time(UTC, 2026, 10, 20, 8, 0), events.get(0).getStart());
+    }
+
+    @Test
+    public void readEvents_unescapesText() throws Exception {
+        List<EventModel> events = readEvents(Long.MIN_VALUE, Long.MAX_VALUE,
+                "BEGIN:VEVENT",
+                "SUMMARY;LANGUAGE=ca:Parcial\\, aula A5\\nSegona part",
+                "DTSTART:20261020T080000Z",
+                "END:VEVENT");
+
+        assertEquals("Parcial, aula A5\nSegona part", events.get(0).getSummary());
+    }
+
+    @Test
+    public void readEvents_parsesUtcDate() throws Exception {
+        assertEquals(time(UTC, 2026, 10, 20, 8, 30), readStart("DTSTART:20261020T083000Z"));
+    }
+
+    @Test
+    public void readEvents_parsesTimeZoneDate() throws Exception {
+        assertEquals(time(MADRID, 2026, 10, 20, 10, 0), readStart("DTSTART;TZID=Europe/Madrid:20261020T100000"));
+        assertEquals(time(MADRID, 2026, 12, 1, 10, 0), readStart("DTSTART;TZID=\"Europe/Madrid\";X-PARAM=\"a:b\":20261201T100000"));
+    }
+
+    @Test
+    public void readEvents_parsesFloatingDateInDefaultTimeZone() throws Exception {
+        assertEquals(time(TimeZone.getDefault(), 2026, 10, 20, 10, 0), readStart("DTSTART:20261020T100000"));
+    }
+
+    @Test
+    public void readEvents_parsesDateValue() throws Exception {
+        assertEquals(time(TimeZone.getDefault(), 2026, 10, 20, 0, 0), readStart("DTSTART;VALUE=DATE:20261020"));
+    }
+
+    @Test
+    public void readEvents_keepsOnlyEventsWithinWindow() throws Exception {
+        long from = time(UTC, 2026, 10, 20, 8, 0);
+        long to = time(UTC, 2026, 10, 22, 8, 0);
+        List<EventModel> events = readEvents(from, to,
+                "BEGIN:VEVENT", "SUMMARY:Before", "DTSTART:20261020T075959Z", "END:VEVENT",
+                "BEGIN:VEVENT", "SUMMARY:From", "DTSTART:20261020T080000Z", "END:VEVENT",
+                "BEGIN:VEVENT", "SUMMARY:Inside", "DTSTART:20261021T120000Z", "END:VEVENT",
+                "BEGIN:VEVENT", "SUMMARY:To", "DTSTART:20261022T080000Z", "END:VEVENT",
+                "BEGIN:VEVENT", "SUMMARY:After", "DTSTART:20261022T080001Z", "END:VEVENT");
+
+        assertEquals(2, events.size());
+        assertEquals("Inside", events.get(0).getSummary());
+        assertEquals("To", events.get(1).getSummary());
+    }
+
+    @Test
+    public void readEvents_skipsIncompleteEvents() throws Exception {
+        List<EventModel> events = readEvents(Long.MIN_VALUE, Long.MAX_VALUE,
+                "BEGIN:VEVENT", "SUMMARY:No start", "END:VEVENT",
+                "BEGIN:VEVENT", "DTSTART:20261020T080000Z", "END:VEVENT",
+                "SUMMARY:Outside", "DTSTART:20261020T080000Z");
+
+        assertTrue(events.isEmpty());
+    }
+
+    private static List<EventModel> readEvents(long from, long to, String... lines) throws IOException {
+        StringBuilder ics = new StringBuilder("BEGIN:VCALENDAR\r\n");
+        for (String line : lines) {
+            ics.append(line).append("\r\n");
+        }
+        ics.append("END:VCALENDAR\r\n");
+        return FileUtils.readEvents(new BufferedReader(new StringReader(ics.toString())), from, to);
+    }
+
+    private static long readStart(String dateStart) throws IOException {
+        List<EventModel> events = readEvents(Long.MIN_VALUE, Long.MAX_VALUE, "BEGIN:VEVENT", "SUMMARY:Event", dateStart, "END:VEVENT");
+        assertEquals(1, events.size());
+        return events.get(0).getStart();
+    }
+
+    private static long time(TimeZone timeZone, int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, 0);
+        return calendar.getTimeInMillis();
+    }
+
+}